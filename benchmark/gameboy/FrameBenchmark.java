@@ -0,0 +1,56 @@
+package gameboy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * whole frames emulated per second for the bundled roms, headless and unpaced
+ *
+ * only roms that keep executing, a rom that halts for good (ttt, opus5) would measure the
+ * HALT fast-forward rather than the cpu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameBenchmark {
+
+	@Param({ "wario_walking", "pokemon_red", "mc-mrder" })
+	public String rom;
+
+	private GameBoy gb;
+
+	@Setup
+	public void setup() {
+		gb = new GameBoy();
+		gb.loadCartridge("src/gameboy/roms/" + rom + ".gb");
+		for (int i = 0; i < 60; i++) {
+			gb.runFrame();
+		}
+		long instructions = gb.z80.instructions();
+		gb.runFrame();
+		if (gb.z80.instructions() == instructions) {
+			throw new IllegalStateException(rom + " is halted, the benchmark would only measure idling");
+		}
+	}
+
+	@Benchmark
+	public long runFrame() {
+		gb.runFrame();
+		return gb.frames;
+	}
+
+}
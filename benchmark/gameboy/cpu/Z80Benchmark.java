@@ -0,0 +1,72 @@
+package gameboy.cpu;
+
+import gameboy.GameBoy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * instructions per second for single opcodes, executed from a block of working ram filled
+ * with the same instruction so every fetch, dispatch and retire is the opcode under test
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Z80Benchmark {
+
+	private static final int START = 0xC000;
+
+	private static final int END = 0xD000;
+
+	/**
+	 * opcode bytes in hex: NOP, INC A, LD A,B, ADD A,B, SUB B, XOR B, CP B, LD A,(HL), LD (HL),A,
+	 * INC HL, ADD HL,BC and the CB-prefixed SWAP A
+	 */
+	@Param({ "00", "3C", "78", "80", "90", "A8", "B8", "7E", "77", "23", "09", "CB37" })
+	public String opcode;
+
+	private GameBoy gb;
+
+	private Z80 z80;
+
+	@Setup
+	public void setup() {
+		gb = new GameBoy();
+		gb.loadCartridge("src/gameboy/roms/ttt.gb");
+		z80 = gb.z80;
+		int length = opcode.length() / 2;
+		for (int address = START; address < END; address += length) {
+			for (int i = 0; i < length; i++) {
+				gb.mmu.writeByte(address + i, Integer.parseInt(opcode.substring(i * 2, i * 2 + 2), 16));
+			}
+		}
+		z80.r.PC = START;
+		z80.r.H = 0xD0;
+		z80.r.L = 0x00;
+	}
+
+	@Benchmark
+	public void exec() {
+		if (z80.r.PC >= END) {
+			z80.r.PC = START;
+			z80.r.H = 0xD0;
+			z80.r.L = 0x00;
+		}
+		z80.exec();
+	}
+
+}
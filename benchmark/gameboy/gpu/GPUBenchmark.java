@@ -0,0 +1,68 @@
+package gameboy.gpu;
+
+import gameboy.GameBoy;
+import gameboy.mmu.GPUVRAM;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * scanlines rendered per second, from a clean tile cache or with every tile row to decode first
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GPUBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean dirtyTiles;
+
+	private GPU gpu;
+
+	@Setup
+	public void setup() {
+		GameBoy gb = new GameBoy();
+		// of the bundled roms only pokemon_red and Bc fill vram in this emulator, the others halt
+		// or never write tiles and would render blank lines
+		gb.loadCartridge("src/gameboy/roms/pokemon_red.gb");
+		for (int i = 0; i < 120; i++) {
+			gb.runFrame();
+		}
+		gpu = gb.gpu;
+		if (isBlank(gpu.vram)) {
+			throw new IllegalStateException("vram is empty after the warm-up, renderScan would draw nothing");
+		}
+	}
+
+	private static boolean isBlank(GPUVRAM vram) {
+		for (int i = 0; i < vram.size(); i++) {
+			if (vram.readByte(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Benchmark
+	public void renderScan() {
+		if (dirtyTiles) {
+			gpu.invalidateTiles();
+		}
+		gpu.renderScan();
+	}
+
+}
@@ -0,0 +1,93 @@
+package gameboy.mmu;
+
+import gameboy.GameBoy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MMU reads and writes per second for each region of the memory map, walking a few addresses
+ * within the region so the page table lookup isn't folded away
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MMUBenchmark {
+
+	@Param({ "rom0", "romx", "vram", "eram", "wram", "echo", "oam", "io", "zram" })
+	public String region;
+
+	private MMU mmu;
+
+	private int base;
+
+	private int mask;
+
+	private int i;
+
+	@Setup
+	public void setup() {
+		GameBoy gb = new GameBoy();
+		// a cartridge without a controller, its external ram is always on
+		gb.loadCartridge("src/gameboy/roms/ttt.gb");
+		mmu = gb.mmu;
+		mask = 0x7F;
+		switch (region) {
+			case "rom0":
+				base = 0x0150;
+				break;
+			case "romx":
+				base = 0x4150;
+				break;
+			case "vram":
+				base = 0x8000;
+				break;
+			case "eram":
+				base = 0xA000;
+				break;
+			case "wram":
+				base = 0xC000;
+				break;
+			case "echo":
+				base = 0xE000;
+				break;
+			case "oam":
+				base = 0xFE00;
+				break;
+			case "io":
+				base = 0xFF00;
+				mask = 0x0F;
+				break;
+			case "zram":
+				base = 0xFF80;
+				mask = 0x7E;
+				break;
+		}
+	}
+
+	@Benchmark
+	public int readByte() {
+		return mmu.readByte(base + (i++ & mask));
+	}
+
+	@Benchmark
+	public void writeByte() {
+		int offset = i++ & mask;
+		mmu.writeByte(base + offset, offset);
+	}
+
+}
@@ -0,0 +1,86 @@
+package gameboy;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * runs a machine one frame at a time at the real console's 59.73Hz
+ *
+ * each frame has a wall clock deadline FRAME_NANOS after the previous one. the thread parks
+ * until SPIN_NANOS before the deadline, as parkNanos can wake late by a scheduler tick, and
+ * spins out the rest. a frame that ends late is not slept after, so the next frames run back
+ * to back and catch up. once more than MAX_LAG_FRAMES behind the missed frames are dropped and
+ * the deadlines restart from now, so a stall does not turn into seconds of fast forward.
+ */
+public class FramePacer {
+
+	/**
+	 * one frame of 70224 clocks at 4194304Hz, about 16.74ms
+	 */
+	public static final long FRAME_NANOS = 70224L * 1000000000L / 4194304L;
+
+	/**
+	 * how long before the deadline to stop parking and spin instead
+	 */
+	public static final long SPIN_NANOS = 1000000L;
+
+	public static final int MAX_LAG_FRAMES = 4;
+
+	private GameBoy gb;
+
+	private volatile boolean running;
+
+	/**
+	 * wall clock time the current frame should end at
+	 */
+	private long deadline;
+
+	/**
+	 * frames given up on because emulation fell too far behind
+	 */
+	public long dropped = 0;
+
+	public FramePacer(GameBoy gb) {
+		this.gb = gb;
+	}
+
+	/**
+	 * run frames until stop() is called
+	 */
+	public void run() {
+		running = true;
+		deadline = System.nanoTime();
+		while(running) {
+			gb.runFrame();
+			pace();
+		}
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * wait for the end of the current frame, or skip ahead if too far behind
+	 */
+	void pace() {
+		deadline += FRAME_NANOS;
+		long now = System.nanoTime();
+		long late = now - deadline;
+		if(late > MAX_LAG_FRAMES * FRAME_NANOS) {
+			dropped += late / FRAME_NANOS;
+			deadline = now;
+			return;
+		}
+		if(late >= 0) {
+			// catching up
+			return;
+		}
+		if(-late > SPIN_NANOS) {
+			LockSupport.parkNanos(this, -late - SPIN_NANOS);
+		}
+		while(System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+	}
+
+}
@@ -1,15 +1,29 @@
 package gameboy;
 
 import gameboy.cpu.Z80;
+import gameboy.file.BatterySave;
+import gameboy.file.RewindBuffer;
 import gameboy.gpu.GPU;
 import gameboy.graphics.Screen;
 import gameboy.keyboard.KeyBoard;
+import gameboy.metrics.Metrics;
+import gameboy.metrics.Monitor;
 import gameboy.mmu.MMU;
+import gameboy.timer.Scheduler;
 import gameboy.timer.Timer;
 
+import java.nio.ByteBuffer;
+
+/**
+ * a single console, every subsystem holds a reference to the GameBoy it belongs to
+ * so any number of instances can run side by side, each on its own thread
+ */
 public class GameBoy {
 	
-	private static GameBoy INSTANCE = null;
+	/**
+	 * machine cycles in one frame, 154 lines of 456 clocks (70224 T-cycles)
+	 */
+	public static final int CYCLES_PER_FRAME = 17556;
 	
 	public Z80 z80;
 	
@@ -21,52 +35,222 @@ public class GameBoy {
 	
 	public Timer timer;
 	
+	public Scheduler scheduler;
+	
+	public Metrics metrics;
+	
+	/**
+	 * publishes the metrics of a start()ed session over JMX
+	 */
+	public Monitor monitor;
+	
 	private String romFileName;
 	
 	private boolean romLoaded = false;
 	
 	private Screen screen;
 	
+	/**
+	 * keeps start() at real speed, stop it to end the session
+	 */
+	public FramePacer pacer;
+	
+	/**
+	 * frames run through runFrame()
+	 */
+	public long frames = 0;
+	
+	/**
+	 * the clock value at which the current frame ends
+	 */
+	private long frameEnd = 0;
+	
+	/**
+	 * captures every frame run through runFrame() when set
+	 */
+	public RewindBuffer rewind;
+	
 	public static void main(String[] args) {
-		GameBoy gb = GameBoy.getInstance();
+		GameBoy gb = new GameBoy();
 		gb.loadCartridge("src/gameboy/roms/pokemon_red.gb");
 		gb.start();
 	}
 	
-	private GameBoy() {
+	public GameBoy() {
+		metrics = new Metrics();
+		scheduler = new Scheduler(this);
+		mmu = new MMU(this);
+		z80 = new Z80(this);
+		// the gpu and timer schedule their first events against the cpu clock
+		gpu = new GPU(this);
+		keyboard = new KeyBoard();
+		timer = new Timer(this);
+		// the vram pages can only be mapped once the gpu exists
+		mmu.mapPages();
 	}
 	
-	public static GameBoy getInstance() {
-		if(INSTANCE == null) {
-			INSTANCE = new GameBoy();
-			INSTANCE.mmu = new MMU();
-			INSTANCE.gpu = new GPU();
-			INSTANCE.z80 = new Z80();
-			INSTANCE.keyboard = new KeyBoard();
-			INSTANCE.timer = new Timer();
-		}
-		return INSTANCE;
+	/**
+	 * a copy of parent for fork()
+	 */
+	private GameBoy(GameBoy parent) {
+		// a fork counts from zero
+		metrics = new Metrics();
+		scheduler = new Scheduler(this, parent.scheduler);
+		mmu = new MMU(this, parent.mmu);
+		z80 = new Z80(this, parent.z80);
+		gpu = new GPU(this, parent.gpu);
+		keyboard = new KeyBoard(parent.keyboard);
+		timer = new Timer(this, parent.timer);
+		mmu.mapPages();
+		romFileName = parent.romFileName;
+		romLoaded = parent.romLoaded;
+		frames = parent.frames;
+		frameEnd = parent.frameEnd;
+	}
+	
+	/**
+	 * clone this machine at its current state, e.g. to search many input sequences from one position.
+	 * the clone shares the cartridge and every ram page copy-on-write, so a fork costs the page tables
+	 * rather than the memory, and it can run on another thread while this machine carries on.
+	 * must not be called while this machine is running
+	 */
+	public GameBoy fork() {
+		GameBoy clone = new GameBoy(this);
+		// our pages are shared now as well, writes to them have to decode until copied
+		mmu.mapPages();
+		return clone;
 	}
 	
 	public void reset() {
+		scheduler.reset();
+		z80.reset();
 		mmu.reset();
 		gpu.reset();
-		z80.reset();
 		keyboard.reset();
 		timer.reset();
+		frames = 0;
+		frameEnd = 0;
 	}
 	
 	public void loadCartridge(String romFileName) {
 		this.romFileName = romFileName;
 		this.romLoaded = true;
 		mmu.loadROM(romFileName);
+		if(z80.blocks != null) {
+			// compiled from the previous cartridge
+			z80.blocks.invalidate();
+		}
+	}
+	
+	/**
+	 * write the machine state, see SaveState for the header and file handling
+	 */
+	public void saveState(ByteBuffer out) {
+		z80.saveState(out);
+		mmu.saveState(out);
+		gpu.saveState(out);
+		timer.saveState(out);
+		keyboard.saveState(out);
+		out.putLong(frames).putLong(frameEnd);
+	}
+	
+	/**
+	 * restore the machine state, the cartridge must already be loaded
+	 */
+	public void loadState(ByteBuffer in) {
+		// the cpu clock first, the gpu and timer reschedule against it
+		z80.loadState(in);
+		mmu.loadState(in);
+		gpu.loadState(in);
+		timer.loadState(in);
+		keyboard.loadState(in);
+		frames = in.getLong();
+		frameEnd = in.getLong();
+	}
+	
+	/**
+	 * run the cpu for one frame worth of machine cycles, without any pacing
+	 */
+	public void runFrame() {
+		frameEnd += CYCLES_PER_FRAME;
+		while(z80.clock.M < frameEnd) {
+			z80.step(frameEnd);
+		}
+		endFrame();
+	}
+	
+	private void endFrame() {
+		frames++;
+		if(rewind != null) {
+			rewind.capture();
+		}
+	}
+	
+	/**
+	 * run frames frames as fast as the host allows, no screen is created
+	 */
+	public RunStats runFrames(long frames) {
+		RunStats stats = startStats();
+		for(long i = 0; i < frames; i++) {
+			runFrame();
+		}
+		return endStats(stats);
+	}
+	
+	/**
+	 * run for a number of machine cycles, frames completed on the way are counted as with runFrame()
+	 */
+	public RunStats runCycles(long cycles) {
+		RunStats stats = startStats();
+		long end = z80.clock.M + cycles;
+		while(z80.clock.M < end) {
+			z80.step(Math.min(end, frameEnd + CYCLES_PER_FRAME));
+			if(z80.clock.M >= frameEnd + CYCLES_PER_FRAME) {
+				frameEnd += CYCLES_PER_FRAME;
+				endFrame();
+			}
+		}
+		return endStats(stats);
+	}
+	
+	/**
+	 * counters at the start of a run, turned into the run's totals by endStats
+	 */
+	private RunStats startStats() {
+		RunStats stats = new RunStats();
+		stats.frames = frames;
+		stats.instructions = z80.instructions();
+		stats.cycles = z80.clock.M;
+		stats.wallNanos = System.nanoTime();
+		return stats;
+	}
+	
+	private RunStats endStats(RunStats stats) {
+		stats.wallNanos = System.nanoTime() - stats.wallNanos;
+		stats.frames = frames - stats.frames;
+		stats.instructions = z80.instructions() - stats.instructions;
+		stats.cycles = z80.clock.M - stats.cycles;
+		return stats;
+	}
+	
+	/**
+	 * keep the cartridge ram in the .sav next to the rom, if it has a battery. not done by
+	 * loadCartridge() so headless sessions of one rom don't all share a save file
+	 */
+	public void loadBattery() {
+		mmu.loadBattery(BatterySave.fileName(romFileName));
 	}
 	
 	public void start() {
 		if(romLoaded) {
-			screen = new Screen();
+			loadBattery();
+			screen = new Screen(this);
 			screen.init();
-			z80.dispatch();
+			screen.start();
+			monitor = new Monitor(this);
+			monitor.start(romFileName);
+			pacer = new FramePacer(this);
+			pacer.run();
 		} else {
 			System.err.println("ROM Not loaded!");
 		}
@@ -0,0 +1,54 @@
+package gameboy;
+
+import gameboy.cpu.Profiler;
+import gameboy.metrics.Monitor;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * runs one rom flat out without a screen, for regression and throughput runs
+ */
+public class Headless {
+
+	/**
+	 * usage: Headless rom count [frames|cycles]
+	 *
+	 * runs the rom for count frames, or count machine cycles, then prints what it did
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("usage: Headless rom count [frames|cycles]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		long count = Long.parseLong(args[1]);
+		boolean cycles = args.length > 2 && args[2].equals("cycles");
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(args[0]);
+		gb.monitor = Monitor.attach(gb, args[0]);
+		RunStats stats = cycles ? gb.runCycles(count) : gb.runFrames(count);
+		if(gb.monitor != null) {
+			gb.monitor.stop();
+		}
+		stats.print(System.out);
+		if(gb.z80.profiler != null) {
+			writeProfile(gb.z80.profiler, args[0]);
+		}
+	}
+
+	/**
+	 * print the hottest opcodes and addresses, and write the call stacks next to the rom as
+	 * a .collapsed file for flame graph tools
+	 */
+	private static void writeProfile(Profiler profiler, String romFileName) throws IOException {
+		profiler.report(System.out, 20);
+		String fileName = romFileName.replaceFirst("\\.[^./\\\\]*$", "") + ".collapsed";
+		try (PrintStream out = new PrintStream(new FileOutputStream(fileName))) {
+			profiler.writeCollapsed(out);
+		}
+		System.out.println("call stacks written to " + fileName);
+	}
+
+}
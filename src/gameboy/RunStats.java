@@ -0,0 +1,45 @@
+package gameboy;
+
+import java.io.PrintStream;
+
+/**
+ * what a headless run did and how long it took on the host
+ */
+public class RunStats {
+
+	/**
+	 * machine cycles per second of the real hardware
+	 */
+	public static final double CYCLES_PER_SECOND = 1048576.0;
+
+	public long frames;
+
+	public long instructions;
+
+	public long cycles;
+
+	public long wallNanos;
+
+	public double framesPerSecond() {
+		return frames * 1e9 / wallNanos;
+	}
+
+	public double instructionsPerSecond() {
+		return instructions * 1e9 / wallNanos;
+	}
+
+	/**
+	 * emulated time over wall time, 1.0 is the speed of the real console
+	 */
+	public double speed() {
+		return (cycles / CYCLES_PER_SECOND) / (wallNanos / 1e9);
+	}
+
+	public void print(PrintStream out) {
+		out.println("frames: " + frames + " in " + (wallNanos / 1000000) + " ms");
+		out.println("frames/sec: " + (long) framesPerSecond());
+		out.println("instructions: " + instructions + " (" + (long) instructionsPerSecond() + "/sec)");
+		out.println("cycles: " + cycles + String.format(" (%.1fx real time)", speed()));
+	}
+
+}
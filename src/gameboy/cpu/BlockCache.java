@@ -0,0 +1,209 @@
+package gameboy.cpu;
+
+import gameboy.GameBoy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * cache of compiled basic blocks
+ *
+ * once a PC has been entered HOT_THRESHOLD times the straight-line code from it up to the next
+ * jump, call, return, restart or HALT is decoded and compiled by BlockCompiler into a hidden class.
+ * executing a block skips the opcode fetch through the MMU and the dispatch, while the
+ * per-instruction bookkeeping (clock, scheduled events, interrupts) is kept and a block stops at
+ * the deadline it is given, so it retires exactly the instructions the interpreter would.
+ *
+ * only cartridge ROM (0000-7FFF) is compiled, RAM is always interpreted so self-modifying code
+ * is never stale. blocks are kept per rom offset they were decoded from, a bank switch selects
+ * the blocks of the new bank and leaves the block being run.
+ */
+public class BlockCache {
+
+	private GameBoy gb;
+
+	public static final int HOT_THRESHOLD = 1024;
+
+	public static final int MAX_BLOCK_LENGTH = 32;
+
+	/**
+	 * opcodes that may transfer control, a block always ends with one of these
+	 */
+	private static final int[] BRANCHES = new int[] {
+		0x10, 0x18, 0x20, 0x27, 0x28, 0x30, 0x38, 0x76, 0xC0, 0xC2, 0xC3, 0xC4, 0xC7, 0xC8, 0xC9,
+		0xCA, 0xCC, 0xCD, 0xCF, 0xD0, 0xD2, 0xD3, 0xD4, 0xD7, 0xD8, 0xD9, 0xDA, 0xDB, 0xDC, 0xDD,
+		0xDF, 0xE3, 0xE4, 0xE7, 0xE9, 0xEB, 0xEC, 0xED, 0xEF, 0xF4, 0xF7, 0xF9, 0xFC, 0xFD, 0xFF
+	};
+
+	/**
+	 * instruction lengths in bytes, including the opcode, for the unprefixed opcodes
+	 */
+	private static final int[] LENGTHS = new int[] {
+		1, 3, 1, 1, 1, 1, 2, 1, 3, 1, 1, 1, 1, 1, 2, 1,
+		2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1,
+		2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1,
+		2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 3, 3, 3, 1, 2, 1, 1, 1, 3, 2, 3, 3, 2, 1,
+		1, 1, 3, 1, 3, 1, 2, 1, 1, 1, 3, 1, 3, 1, 2, 1,
+		2, 1, 1, 1, 1, 1, 2, 1, 2, 1, 3, 1, 1, 1, 2, 1,
+		2, 1, 1, 1, 1, 1, 2, 1, 2, 1, 3, 1, 1, 1, 2, 1
+	};
+
+	private static final boolean[] ENDS_BLOCK = new boolean[256];
+
+	static {
+		for(int op : BRANCHES) {
+			ENDS_BLOCK[op] = true;
+		}
+	}
+
+	private Z80 z80;
+
+	private BlockCompiler compiler;
+
+	/**
+	 * the block last run at each PC and the rom offset it was decoded from
+	 */
+	private Block[] blocks;
+
+	private int[] offsets;
+
+	private int[] hits;
+
+	/**
+	 * every block compiled, by rom offset << 16 | PC
+	 */
+	private Map<Long, Block> compiled = new HashMap<Long, Block>();
+
+	public BlockCache(GameBoy gb, Z80 z80) {
+		this.gb = gb;
+		this.z80 = z80;
+		compiler = new BlockCompiler(z80, this);
+		blocks = new Block[0x8000];
+		offsets = new int[0x8000];
+		hits = new int[0x8000];
+	}
+
+	/**
+	 * drop every block, for a new cartridge
+	 */
+	public void invalidate() {
+		for(int i = 0; i < blocks.length; i++) {
+			blocks[i] = null;
+			hits[i] = 0;
+		}
+		compiled.clear();
+	}
+
+	/**
+	 * blocks compiled since the last invalidate()
+	 */
+	int size() {
+		return compiled.size();
+	}
+
+	/**
+	 * execute the block starting at the current PC, up to the first instruction that ends at or
+	 * after deadline
+	 * @return false if there is no block for this PC and the caller should interpret
+	 */
+	public boolean exec(long deadline) {
+		int pc = z80.r.PC;
+		if(pc >= 0x8000 || (gb.mmu.inBios == 1 && pc < 0x0100)) {
+			return false;
+		}
+		int offset = offset(pc);
+		Block block = blocks[pc];
+		if(block == null || offsets[pc] != offset) {
+			Long key = ((long) offset << 16) | pc;
+			block = compiled.get(key);
+			if(block == null) {
+				if(++hits[pc] < HOT_THRESHOLD) {
+					return false;
+				}
+				hits[pc] = 0;
+				block = compile(pc, offset);
+				compiled.put(key, block);
+			}
+			blocks[pc] = block;
+			offsets[pc] = offset;
+		}
+		block.exec(deadline);
+		return true;
+	}
+
+	/**
+	 * the rom offset mapped at pc's half of the cartridge space
+	 */
+	private int offset(int pc) {
+		return (pc < 0x4000) ? gb.mmu.rom0Offs : gb.mmu.romOffs;
+	}
+
+	/**
+	 * the bookkeeping after each instruction of a compiled block
+	 * @param next the address the instruction falls through to
+	 * @param offset the rom offset the block was decoded from
+	 * @return true if the block carries on, false on a taken branch, a serviced interrupt,
+	 * a bank switch or once the deadline is reached
+	 */
+	boolean retire(int next, int offset, long deadline) {
+		z80.retire();
+		return z80.r.PC == next && z80.clock.M < deadline && offset(next) == offset;
+	}
+
+	private Block compile(int start, int offset) {
+		// never let a block cross into another bank
+		int end = (start < 0x4000) ? 0x4000 : 0x8000;
+		Opcode[] handlers = new Opcode[MAX_BLOCK_LENGTH];
+		int[] pcs = new int[MAX_BLOCK_LENGTH];
+		int[] next = new int[MAX_BLOCK_LENGTH];
+		int pc = start;
+		int n = 0;
+		while(n < MAX_BLOCK_LENGTH) {
+			int op = gb.mmu.readByte(pc);
+			int length = LENGTHS[op];
+			if(pc + length > end) {
+				break;
+			}
+			if(op == 0xCB) {
+				handlers[n] = z80.cbOps[gb.mmu.readByte(pc + 1)];
+				pcs[n] = pc + 2;
+			} else {
+				handlers[n] = z80.ops[op];
+				pcs[n] = pc + 1;
+			}
+			pc += length;
+			next[n] = pc;
+			n++;
+			if(ENDS_BLOCK[op]) {
+				break;
+			}
+		}
+		if(n == 0) {
+			// the first instruction straddles the bank boundary, run it and leave
+			handlers[n] = z80.ops[gb.mmu.readByte(start)];
+			pcs[n] = start + 1;
+			next[n] = -1;
+			n++;
+		}
+		return compiler.compile(n, handlers, pcs, next, offset);
+	}
+
+	/**
+	 * a compiled block, implemented by the classes BlockCompiler defines
+	 */
+	interface Block {
+
+		void exec(long deadline);
+
+	}
+
+}
@@ -0,0 +1,367 @@
+package gameboy.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * turns a decoded basic block into a hidden class
+ *
+ * the class gets the cpu, the cache and one static final field per instruction handler from its
+ * class data, so every call in its exec() has a constant receiver the JIT can inline, and the
+ * block is compiled as one method. per instruction it sets PC past the opcode, runs the handler
+ * and lets BlockCache.retire() do the bookkeeping and decide whether the block carries on.
+ *
+ * class files are written in version 49, which needs no stack map frames
+ */
+class BlockCompiler {
+
+	private static final int VERSION = 49;
+
+	private static final String Z80 = "gameboy/cpu/Z80";
+	private static final String CACHE = "gameboy/cpu/BlockCache";
+	private static final String BLOCK = "gameboy/cpu/BlockCache$Block";
+	private static final String OPCODE = "gameboy/cpu/Opcode";
+	private static final String REGISTERS = "gameboy/cpu/Z80Registers";
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int LLOAD_1 = 0x1F;
+	private static final int ALOAD_0 = 0x2A;
+	private static final int AALOAD = 0x32;
+	private static final int ASTORE_0 = 0x4B;
+	private static final int POP = 0x57;
+	private static final int IFNE = 0x9A;
+	private static final int RETURN = 0xB1;
+	private static final int GETSTATIC = 0xB2;
+	private static final int PUTSTATIC = 0xB3;
+	private static final int GETFIELD = 0xB4;
+	private static final int PUTFIELD = 0xB5;
+	private static final int INVOKEVIRTUAL = 0xB6;
+	private static final int INVOKESPECIAL = 0xB7;
+	private static final int INVOKESTATIC = 0xB8;
+	private static final int INVOKEINTERFACE = 0xB9;
+	private static final int CHECKCAST = 0xC0;
+
+	private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private final Z80 z80;
+
+	private final BlockCache cache;
+
+	// constant pool of the class being written
+	private ByteArrayOutputStream poolBytes;
+
+	private DataOutputStream pool;
+
+	private Map<String, Integer> constants;
+
+	private int poolSize;
+
+	BlockCompiler(Z80 z80, BlockCache cache) {
+		this.z80 = z80;
+		this.cache = cache;
+	}
+
+	/**
+	 * define the class for a block and return its instance
+	 * @param handlers the handler of each instruction
+	 * @param pcs the address each instruction's handler starts at, past its opcode
+	 * @param next the address each instruction falls through to, the block leaves if PC is elsewhere
+	 * @param offset the rom offset the block was decoded from, see BlockCache.retire()
+	 */
+	BlockCache.Block compile(int length, Opcode[] handlers, int[] pcs, int[] next, int offset) {
+		Object[] data = new Object[length + 2];
+		data[0] = z80;
+		data[1] = cache;
+		System.arraycopy(handlers, 0, data, 2, length);
+		try {
+			MethodHandles.Lookup hidden = lookup.defineHiddenClassWithClassData(
+					write(length, pcs, next, offset), data, true);
+			return (BlockCache.Block) hidden.findConstructor(hidden.lookupClass(),
+					MethodType.methodType(void.class)).invoke();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("block at " + Integer.toHexString(pcs[0] - 1) + " failed to load", t);
+		}
+	}
+
+	private byte[] write(int length, int[] pcs, int[] next, int offset) {
+		try {
+			poolBytes = new ByteArrayOutputStream();
+			pool = new DataOutputStream(poolBytes);
+			constants = new HashMap<String, Integer>();
+			poolSize = 1;
+
+			int thisClass = classRef("gameboy/cpu/CompiledBlock");
+			int superClass = classRef("java/lang/Object");
+			int block = classRef(BLOCK);
+			int code = utf8("Code");
+			byte[] clinit = method(ACC_STATIC, "<clinit>", "()V", code, 3, 1, classInit(length));
+			byte[] init = method(ACC_PUBLIC, "<init>", "()V", code, 1, 1, init());
+			byte[] exec = method(ACC_PUBLIC, "exec", "(J)V", code, 5, 3, exec(length, pcs, next, offset));
+			int z80Name = utf8("Z");
+			int z80Type = utf8("L" + Z80 + ";");
+			int cacheName = utf8("C");
+			int cacheType = utf8("L" + CACHE + ";");
+			int handlerType = utf8("L" + OPCODE + ";");
+			int[] handlerNames = new int[length];
+			for(int i = 0; i < length; i++) {
+				handlerNames[i] = utf8("H" + i);
+			}
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolSize);
+			poolBytes.writeTo(out);
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(block);
+			out.writeShort(length + 2);
+			field(out, z80Name, z80Type);
+			field(out, cacheName, cacheType);
+			for(int i = 0; i < length; i++) {
+				field(out, handlerNames[i], handlerType);
+			}
+			out.writeShort(3);
+			out.write(clinit);
+			out.write(init);
+			out.write(exec);
+			out.writeShort(0);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// only ever writes to memory
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * copy the class data into the static final fields
+	 */
+	private byte[] classInit(int length) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream code = new DataOutputStream(bytes);
+		code.writeByte(INVOKESTATIC);
+		code.writeShort(methodRef("java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+		ldc(code, stringRef("_"));
+		ldc(code, classRef("[Ljava/lang/Object;"));
+		code.writeByte(INVOKESTATIC);
+		code.writeShort(methodRef("java/lang/invoke/MethodHandles", "classData",
+				"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"));
+		code.writeByte(CHECKCAST);
+		code.writeShort(classRef("[Ljava/lang/Object;"));
+		code.writeByte(ASTORE_0);
+		for(int i = 0; i < length + 2; i++) {
+			String type = (i == 0) ? Z80 : (i == 1) ? CACHE : OPCODE;
+			String name = (i == 0) ? "Z" : (i == 1) ? "C" : "H" + (i - 2);
+			code.writeByte(ALOAD_0);
+			push(code, i);
+			code.writeByte(AALOAD);
+			code.writeByte(CHECKCAST);
+			code.writeShort(classRef(type));
+			code.writeByte(PUTSTATIC);
+			code.writeShort(fieldRef("gameboy/cpu/CompiledBlock", name, "L" + type + ";"));
+		}
+		code.writeByte(RETURN);
+		return bytes.toByteArray();
+	}
+
+	private byte[] init() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream code = new DataOutputStream(bytes);
+		code.writeByte(ALOAD_0);
+		code.writeByte(INVOKESPECIAL);
+		code.writeShort(methodRef("java/lang/Object", "<init>", "()V"));
+		code.writeByte(RETURN);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * for each instruction, in the order the interpreter would run them:
+	 * Z.r.PC = pcs[i]; Hi.exec(); if(!C.retire(next[i], offset, deadline)) return;
+	 */
+	private byte[] exec(int length, int[] pcs, int[] next, int offset) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream code = new DataOutputStream(bytes);
+		int z80Field = fieldRef("gameboy/cpu/CompiledBlock", "Z", "L" + Z80 + ";");
+		int cacheField = fieldRef("gameboy/cpu/CompiledBlock", "C", "L" + CACHE + ";");
+		int registers = fieldRef(Z80, "r", "L" + REGISTERS + ";");
+		int pc = fieldRef(REGISTERS, "PC", "I");
+		int exec = interfaceMethodRef(OPCODE, "exec", "()V");
+		int retire = methodRef(CACHE, "retire", "(IIJ)Z");
+		for(int i = 0; i < length; i++) {
+			code.writeByte(GETSTATIC);
+			code.writeShort(z80Field);
+			code.writeByte(GETFIELD);
+			code.writeShort(registers);
+			push(code, pcs[i]);
+			code.writeByte(PUTFIELD);
+			code.writeShort(pc);
+
+			code.writeByte(GETSTATIC);
+			code.writeShort(fieldRef("gameboy/cpu/CompiledBlock", "H" + i, "L" + OPCODE + ";"));
+			code.writeByte(INVOKEINTERFACE);
+			code.writeShort(exec);
+			code.writeByte(1);
+			code.writeByte(0);
+
+			code.writeByte(GETSTATIC);
+			code.writeShort(cacheField);
+			push(code, next[i]);
+			push(code, offset);
+			code.writeByte(LLOAD_1);
+			code.writeByte(INVOKEVIRTUAL);
+			code.writeShort(retire);
+			if(i < length - 1) {
+				// carry on past the return below
+				code.writeByte(IFNE);
+				code.writeShort(4);
+				code.writeByte(RETURN);
+			} else {
+				code.writeByte(POP);
+			}
+		}
+		code.writeByte(RETURN);
+		return bytes.toByteArray();
+	}
+
+	private byte[] method(int access, String name, String descriptor, int codeName, int maxStack,
+			int maxLocals, byte[] code) throws IOException {
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeShort(access);
+		out.writeShort(nameIndex);
+		out.writeShort(descriptorIndex);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		// no exception table, no attributes
+		out.writeShort(0);
+		out.writeShort(0);
+		return bytes.toByteArray();
+	}
+
+	private static void field(DataOutputStream out, int name, int type) throws IOException {
+		out.writeShort(ACC_STATIC | ACC_FINAL);
+		out.writeShort(name);
+		out.writeShort(type);
+		out.writeShort(0);
+	}
+
+	private void push(DataOutputStream code, int value) throws IOException {
+		if(value >= -1 && value <= 5) {
+			code.writeByte(ICONST_0 + value);
+		} else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.writeByte(BIPUSH);
+			code.writeByte(value);
+		} else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.writeByte(SIPUSH);
+			code.writeShort(value);
+		} else {
+			ldc(code, integer(value));
+		}
+	}
+
+	private static void ldc(DataOutputStream code, int index) throws IOException {
+		if(index < 0x100) {
+			code.writeByte(LDC);
+			code.writeByte(index);
+		} else {
+			code.writeByte(LDC_W);
+			code.writeShort(index);
+		}
+	}
+
+	private int utf8(String value) throws IOException {
+		Integer index = constants.get("U" + value);
+		if(index == null) {
+			pool.writeByte(1);
+			pool.writeUTF(value);
+			index = add("U" + value);
+		}
+		return index;
+	}
+
+	private int integer(int value) throws IOException {
+		Integer index = constants.get("I" + value);
+		if(index == null) {
+			pool.writeByte(3);
+			pool.writeInt(value);
+			index = add("I" + value);
+		}
+		return index;
+	}
+
+	private int classRef(String name) throws IOException {
+		return ref("C", 7, utf8(name));
+	}
+
+	private int stringRef(String value) throws IOException {
+		return ref("S", 8, utf8(value));
+	}
+
+	private int fieldRef(String owner, String name, String type) throws IOException {
+		return ref("F", 9, classRef(owner), nameAndType(name, type));
+	}
+
+	private int methodRef(String owner, String name, String type) throws IOException {
+		return ref("M", 10, classRef(owner), nameAndType(name, type));
+	}
+
+	private int interfaceMethodRef(String owner, String name, String type) throws IOException {
+		return ref("IM", 11, classRef(owner), nameAndType(name, type));
+	}
+
+	private int nameAndType(String name, String type) throws IOException {
+		return ref("N", 12, utf8(name), utf8(type));
+	}
+
+	/**
+	 * a constant made of other constants' indices
+	 */
+	private int ref(String kind, int tag, int... indices) throws IOException {
+		String key = kind + Arrays.toString(indices);
+		Integer index = constants.get(key);
+		if(index == null) {
+			pool.writeByte(tag);
+			for(int i : indices) {
+				pool.writeShort(i);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	private int add(String key) {
+		int index = poolSize++;
+		constants.put(key, index);
+		return index;
+	}
+
+}
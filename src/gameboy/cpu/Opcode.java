@@ -0,0 +1,10 @@
+package gameboy.cpu;
+
+/**
+ * a single instruction handler, one entry in a dispatch table
+ */
+public interface Opcode {
+
+	void exec();
+
+}
@@ -0,0 +1,241 @@
+package gameboy.cpu;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * counts executions and machine cycles per opcode and per address, enable with -Dgameboy.z80.profile=true
+ *
+ * opcodes index 0-255, CB-prefixed ones 0x100 | the second byte. addresses are the 64KB the cpu
+ * sees, so the switchable rom banks share 4000-7FFF. cycles are also charged to the current call
+ * stack, followed through CALL, RST, interrupts and RET. stacks are nodes of a tree, a child per
+ * call target, so nothing is built per instruction and writeCollapsed() can print them in the
+ * collapsed format flame graph tools read.
+ */
+public class Profiler {
+
+	public static final int OPCODES = 0x200;
+
+	/**
+	 * call stack nodes kept, deeper or rarer stacks are charged to the caller once full
+	 */
+	public static final int MAX_NODES = 1 << 16;
+
+	public static final int MAX_DEPTH = 256;
+
+	public long[] opCounts = new long[OPCODES];
+
+	public long[] opCycles = new long[OPCODES];
+
+	public long[] pcCounts = new long[0x10000];
+
+	public long[] pcCycles = new long[0x10000];
+
+	// call tree, node 0 is the root
+	private int[] parents = new int[MAX_NODES];
+
+	private int[] targets = new int[MAX_NODES];
+
+	// calls from the root to each node, never more than MAX_DEPTH
+	private int[] depths = new int[MAX_NODES];
+
+	private long[] nodeCycles = new long[MAX_NODES];
+
+	private int nodes = 1;
+
+	private Map<Long, Integer> children = new HashMap<Long, Integer>();
+
+	/**
+	 * the current call stack, with the stack pointer each call pushed its return address to
+	 */
+	private int[] stack = new int[MAX_DEPTH];
+
+	private int[] stackSp = new int[MAX_DEPTH];
+
+	private int depth = 0;
+
+	private int node = 0;
+
+	private Z80 z80;
+
+	/**
+	 * second byte of the CB-prefixed instruction being run, set by MAPcb
+	 */
+	int cb;
+
+	public Profiler(Z80 z80) {
+		this.z80 = z80;
+	}
+
+	/**
+	 * record an instruction that has run, before retire() adds its cycles to the clock
+	 * @param pc address of the instruction
+	 * @param sp stack pointer before the instruction
+	 */
+	void count(int pc, int op, int sp) {
+		Z80Registers r = z80.r;
+		long cycles = r.M;
+		if(op == 0xCB) {
+			op = 0x100 | cb;
+		}
+		opCounts[op]++;
+		opCycles[op] += cycles;
+		pcCounts[pc]++;
+		pcCycles[pc] += cycles;
+		nodeCycles[node] += cycles;
+		if(r.SP == sp - 2 && isCall(op)) {
+			call(r.PC & 0xFFFF, r.SP);
+		} else if(r.SP == sp + 2 && isReturn(op)) {
+			ret(r.SP);
+		}
+	}
+
+	/**
+	 * an interrupt pushed the pc and jumped to its vector
+	 */
+	void interrupt(int vector) {
+		nodeCycles[node] += z80.r.M;
+		call(vector, z80.r.SP);
+	}
+
+	/**
+	 * forget the call stack, after the registers were replaced by a loaded state
+	 */
+	void resetStack() {
+		depth = 0;
+		node = 0;
+	}
+
+	private static boolean isCall(int op) {
+		switch(op) {
+			case 0xC4: case 0xCC: case 0xCD: case 0xD4: case 0xDC:
+			case 0xC7: case 0xCF: case 0xD7: case 0xDF: case 0xE7: case 0xEF: case 0xF7: case 0xFF:
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isReturn(int op) {
+		switch(op) {
+			case 0xC0: case 0xC8: case 0xC9: case 0xD0: case 0xD8: case 0xD9:
+				return true;
+		}
+		return false;
+	}
+
+	private void call(int target, int sp) {
+		if(depth == stack.length) {
+			// runaway recursion or a stack that is never returned from, keep the innermost frames
+			System.arraycopy(stack, 1, stack, 0, depth - 1);
+			System.arraycopy(stackSp, 1, stackSp, 0, depth - 1);
+			depth--;
+		}
+		stack[depth] = node;
+		stackSp[depth] = sp;
+		depth++;
+		if(depths[node] == MAX_DEPTH) {
+			// charged to the deepest node, so no stack is longer than MAX_DEPTH, even after the
+			// frames dropped above have been returned through
+			return;
+		}
+		Long key = ((long) node << 16) | target;
+		Integer child = children.get(key);
+		if(child == null) {
+			if(nodes == MAX_NODES) {
+				return;
+			}
+			child = nodes++;
+			parents[child] = node;
+			depths[child] = depths[node] + 1;
+			targets[child] = target;
+			children.put(key, child);
+		}
+		node = child;
+	}
+
+	/**
+	 * pop every frame whose return address is now above the stack pointer, which also
+	 * unwinds frames a game left by resetting SP or jumping out of a handler
+	 */
+	private void ret(int sp) {
+		while(depth > 0 && stackSp[depth - 1] < sp) {
+			depth--;
+			node = stack[depth];
+		}
+	}
+
+	public long totalCycles() {
+		long total = 0;
+		for(long c : opCycles) {
+			total += c;
+		}
+		return total;
+	}
+
+	public static String opcodeName(int op) {
+		return (op >= 0x100) ? String.format("CB %02X", op & 0xFF) : String.format("%02X", op);
+	}
+
+	/**
+	 * the top opcodes and addresses, sorted by cycles spent
+	 */
+	public void report(PrintStream out, int top) {
+		long total = Math.max(1, totalCycles());
+		out.println("opcode      count      cycles      %");
+		for(int op : sortByCycles(opCycles, top)) {
+			out.println(String.format("%-6s %10d  %10d  %5.1f", opcodeName(op), opCounts[op], opCycles[op],
+					100.0 * opCycles[op] / total));
+		}
+		out.println("address     count      cycles      %");
+		for(int pc : sortByCycles(pcCycles, top)) {
+			out.println(String.format("%04X   %10d  %10d  %5.1f", pc, pcCounts[pc], pcCycles[pc],
+					100.0 * pcCycles[pc] / total));
+		}
+	}
+
+	/**
+	 * one line per call stack, root first, followed by the cycles spent in it
+	 */
+	public void writeCollapsed(PrintStream out) {
+		StringBuilder line = new StringBuilder();
+		int[] path = new int[MAX_DEPTH + 1];
+		for(int n = 0; n < nodes; n++) {
+			if(nodeCycles[n] == 0) {
+				continue;
+			}
+			int length = 0;
+			for(int p = n; p != 0; p = parents[p]) {
+				path[length++] = targets[p];
+			}
+			line.setLength(0);
+			line.append("root");
+			while(length > 0) {
+				line.append(';').append(String.format("%04X", path[--length]));
+			}
+			out.println(line.append(' ').append(nodeCycles[n]));
+		}
+	}
+
+	/**
+	 * indices of the largest non-zero values, at most top of them
+	 */
+	private static int[] sortByCycles(long[] cycles, int top) {
+		Integer[] indices = new Integer[cycles.length];
+		for(int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+		Arrays.sort(indices, (a, b) -> Long.compare(cycles[b], cycles[a]));
+		int n = 0;
+		while(n < top && n < indices.length && cycles[indices[n]] > 0) {
+			n++;
+		}
+		int[] sorted = new int[n];
+		for(int i = 0; i < n; i++) {
+			sorted[i] = indices[i];
+		}
+		return sorted;
+	}
+
+}
@@ -1,6 +1,9 @@
 package gameboy.cpu;
 
 import gameboy.GameBoy;
+import gameboy.metrics.InterruptEvent;
+
+import java.nio.ByteBuffer;
 
 /**
  * emulation of the GameBoy's modified Zilog Z80
@@ -10,7 +13,7 @@ import gameboy.GameBoy;
  */
 public class Z80 {
 	
-	private GameBoy gb = GameBoy.getInstance();
+	private GameBoy gb;
 	
 	public Z80Registers r;
 
@@ -22,39 +25,172 @@ public class Z80 {
 
 	public int STOP = 0;
 	
-	private long lastTimeMeasured = System.currentTimeMillis();
-	private long lastNumberOfCommandsExecuted = 0;
+	/**
+	 * dispatch through the precomputed opcode tables instead of the opMap/cbMap switches,
+	 * select with -Dgameboy.z80.dispatch=table
+	 */
+	public static final boolean TABLE_DISPATCH = "table".equals(System.getProperty("gameboy.z80.dispatch"));
+	
+	Opcode[] ops;
+	
+	Opcode[] cbOps;
+	
+	/**
+	 * cache of basic blocks compiled to hidden classes, enable with -Dgameboy.z80.blocks=true
+	 */
+	public static final boolean BLOCK_CACHE = "true".equals(System.getProperty("gameboy.z80.blocks"));
+	
+	public BlockCache blocks;
+
+	/**
+	 * per opcode and per address counters, enable with -Dgameboy.z80.profile=true. every
+	 * instruction then goes through exec(), the block cache is not used
+	 */
+	public static final boolean PROFILE = "true".equals(System.getProperty("gameboy.z80.profile"));
+
+	public Profiler profiler;
+	
+	/**
+	 * defer computing F for the ALU instructions until an instruction reads it,
+	 * enable with -Dgameboy.z80.lazyflags=true
+	 */
+	public static final boolean LAZY_FLAGS = "true".equals(System.getProperty("gameboy.z80.lazyflags"));
+	
+	private static final int FLAGS_NONE = 0;
+	private static final int FLAGS_ADD = 1;
+	private static final int FLAGS_SUB = 2;
+	private static final int FLAGS_ZERO = 3;
+	
+	/**
+	 * the last ALU operation whose flags have not been written to r.F yet
+	 */
+	private int flagOp = FLAGS_NONE;
+	private int flagA;
+	private int flagB;
+	private int flagResult;
+	
 	private long totalCommandsExecuted = 0;
 
-	public Z80() {
+	public Z80(GameBoy gb) {
+		this.gb = gb;
 		r = new Z80Registers();
 		rsv = new Z80Registers();
 		clock = new Z80Clock();
+		ops = Z80OpTable.ops(this);
+		cbOps = Z80OpTable.cbOps(this);
+		if(PROFILE) {
+			profiler = new Profiler(this);
+		} else if(BLOCK_CACHE) {
+			blocks = new BlockCache(gb, this);
+		}
 		reset();
 	}
 
+	/**
+	 * a copy of parent's cpu for a fork of its machine
+	 */
+	public Z80(GameBoy gb, Z80 parent) {
+		this(gb);
+		parent.flags();
+		r.copy(parent.r);
+		rsv.copy(parent.rsv);
+		clock.M = parent.clock.M;
+		HALT = parent.HALT;
+		STOP = parent.STOP;
+	}
+
 	public void reset() {
 		r.clear();
 		rsv.clear();
 		clock.reset();
+		flagOp = FLAGS_NONE;
+		if(blocks != null) {
+			blocks.invalidate();
+		}
 	}
 
 	public void exec() {
 		// Run execute for this instruction
+		if(PROFILE) {
+			execProfiled();
+			return;
+		}
 		//r.R = (r.R + 1) & 127;
 		int op = gb.mmu.readByte(r.PC++);
 		/*System.out.println("PC: " + r.PC + ":\t" + "SP: 0x"
 				+ Integer.toHexString(r.SP).toUpperCase() + ":\t" + "OP: 0x"
 				+ Integer.toHexString(op).toUpperCase());*/
-		opMap(op); // Fetch instruction & Dispatch
+		// Fetch instruction & Dispatch
+		if(TABLE_DISPATCH) {
+			ops[op].exec();
+		} else {
+			opMap(op);
+		}
+		retire();
+	}
+
+	/**
+	 * exec() with the instruction counted by the profiler, kept apart so the normal path is unchanged
+	 */
+	private void execProfiled() {
+		int pc = r.PC;
+		int sp = r.SP;
+		int op = gb.mmu.readByte(r.PC++);
+		if(TABLE_DISPATCH) {
+			ops[op].exec();
+		} else {
+			opMap(op);
+		}
+		profiler.count(pc, op, sp);
+		retire();
+	}
+
+	public void saveState(ByteBuffer out) {
+		flags();
+		r.saveState(out);
+		rsv.saveState(out);
+		out.putLong(clock.M);
+		out.putInt(HALT).putInt(STOP);
+	}
+
+	/**
+	 * restore the cpu, the clock has to be loaded before anything that schedules against it
+	 */
+	public void loadState(ByteBuffer in) {
+		r.loadState(in);
+		rsv.loadState(in);
+		clock.M = in.getLong();
+		HALT = in.getInt();
+		STOP = in.getInt();
+		flagOp = FLAGS_NONE;
+		if(profiler != null) {
+			profiler.resetStack();
+		}
+		// compiled blocks only depend on the cartridge, which a state cannot change
+	}
+
+	/**
+	 * bookkeeping after an instruction: clock, scheduled events and interrupts
+	 */
+	void retire() {
 		r.PC &= 0xFFFF; // Mask PC to 16 bits
 		clock.M += r.M; // Add time to CPU clock
 		
-		// Update timer
-		gb.timer.inc();
+		// Run gpu and timer events that have come due
+		if(clock.M >= gb.scheduler.next) {
+			gb.scheduler.run(clock.M);
+		}
 		r.M = 0;
 		r.T = 0;
 		
+		interrupts();
+		totalCommandsExecuted++;
+	}
+
+	/**
+	 * service a pending interrupt, then run the events that came due while doing so
+	 */
+	private void interrupts() {
 		// If IME is on, and some interrupts are enabled in IE, and 
 		// an interrupt flag is set, handle the interrupt
 		if(r.IME > 0 && gb.mmu.IE > 0&& gb.mmu.IF > 0) {
@@ -62,30 +198,90 @@ public class Z80 {
 			int ifired = gb.mmu.IE & gb.mmu.IF;
 			if((ifired & 0x01) > 0) {
 				gb.mmu.IF &= 0xFE; // (0xFF - 0x01);
+				int pc = r.PC;
+				// also ends a HALT, including one run with the interrupt already pending
+				HALT = 0;
 				RST40();
+				if(PROFILE) {
+					profiler.interrupt(0x40);
+				}
+				gb.metrics.interrupts++;
+				// allocation is optimised away when jfr is not recording the event
+				InterruptEvent event = new InterruptEvent();
+				if(event.isEnabled()) {
+					event.vector = 0x40;
+					event.pc = pc;
+					event.commit();
+				}
 			}
 		}
 		clock.M += r.M;
 		
-		// Update timer again, in case a RST occurred
-		gb.timer.inc();
-		
-		totalCommandsExecuted++;
-		if(System.currentTimeMillis() - lastTimeMeasured > 1000) {
-			lastTimeMeasured = System.currentTimeMillis();
-			System.out.println((totalCommandsExecuted - lastNumberOfCommandsExecuted) + " ops/sec");
-			lastNumberOfCommandsExecuted = totalCommandsExecuted;
+		// Check again, in case a RST occurred
+		if(clock.M >= gb.scheduler.next) {
+			gb.scheduler.run(clock.M);
+		}
+	}
+
+	/**
+	 * while halted nothing runs until an enabled interrupt is requested, and only a scheduled
+	 * event can request one, so jump the clock straight to the next event instead of stepping
+	 */
+	private void idle() {
+		if((gb.mmu.IE & gb.mmu.IF & 0x1F) == 0) {
+			// at most a frame at a time, should nothing be scheduled
+			clock.M = Math.min(gb.scheduler.next, clock.M + GameBoy.CYCLES_PER_FRAME);
+			gb.scheduler.run(clock.M);
+			if((gb.mmu.IE & gb.mmu.IF & 0x1F) == 0) {
+				return;
+			}
+		}
+		// wake up, the interrupt is serviced before the instruction after HALT
+		r.M = 0;
+		interrupts();
+		if(HALT != 0) {
+			// nothing was dispatched, IME is off or the interrupt has no vector here,
+			// so execution carries on after HALT
+			HALT = 0;
 		}
 	}
 
+	/**
+	 * instructions retired since the cpu was created
+	 */
+	public long instructions() {
+		return totalCommandsExecuted;
+	}
+
 	/**
 	 * the main dispatch loop
 	 */
 	public void dispatch() {
 		while (true) {
-			exec();
-			gb.gpu.step();
+			step();
+		}
+	}
+
+	/**
+	 * execute the next cached block, or a single instruction, or idle until the next event when halted
+	 */
+	public void step() {
+		step(Long.MAX_VALUE);
+	}
+
+	/**
+	 * step(), with a cached block stopping once the clock reaches deadline, so a run that ends
+	 * there retires the same instructions as the interpreter
+	 */
+	public void step(long deadline) {
+		if(HALT != 0) {
+			idle();
+			return;
+		}
+		if(blocks != null && blocks.exec(deadline)) {
+			return;
 		}
+		exec();
 	}
 
 	/**
@@ -604,6 +800,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_b() {
+		flags();
 		int tr = r.B;
 		r.B = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.B > 0) ? 0 : 0x80;
@@ -611,6 +808,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_c() {
+		flags();
 		int tr = r.C;
 		r.C = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.C > 0) ? 0 : 0x80;
@@ -618,6 +816,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_d() {
+		flags();
 		int tr = r.D;
 		r.D = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.D > 0) ? 0 : 0x80;
@@ -625,6 +824,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_e() {
+		flags();
 		int tr = r.E;
 		r.E = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.E > 0) ? 0 : 0x80;
@@ -632,6 +832,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_h() {
+		flags();
 		int tr = r.H;
 		r.H = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.H > 0) ? 0 : 0x80;
@@ -639,6 +840,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_l() {
+		flags();
 		int tr = r.L;
 		r.L = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.L > 0) ? 0 : 0x80;
@@ -646,6 +848,7 @@ public class Z80 {
 	}
 
 	public void SWAPr_a() {
+		flags();
 		int tr = r.A;
 		r.A = ((tr & 0xF) << 4) | ((tr & 0xF0) >> 4);
 		r.F = (r.A > 0) ? 0 : 0x80;
@@ -656,84 +859,56 @@ public class Z80 {
 	public void ADDr_b() {
 		int a = r.A;
 		r.A += r.B;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.B, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.B ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADDr_c() {
 		int a = r.A;
 		r.A += r.C;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.C, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.C ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADDr_d() {
 		int a = r.A;
 		r.A += r.D;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.D, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.D ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADDr_e() {
 		int a = r.A;
 		r.A += r.E;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.E, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.E ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADDr_h() {
 		int a = r.A;
 		r.A += r.H;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.H, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.H ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADDr_l() {
 		int a = r.A;
 		r.A += r.L;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.L, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.L ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADDr_a() {
 		int a = r.A;
 		r.A += r.A;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.A, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.A ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
@@ -741,12 +916,8 @@ public class Z80 {
 		int a = r.A;
 		int m = gb.mmu.readByte((r.H << 8) + r.L);
 		r.A += m;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ a ^ m) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
@@ -755,16 +926,13 @@ public class Z80 {
 		int m = gb.mmu.readByte(r.PC);
 		r.A += m;
 		r.PC++;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ a ^ m) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
 	public void ADDHLBC() {
+		flags();
 		int hl = (r.H << 8) + r.L;
 		hl += (r.B << 8) + r.C;
 		if (hl > 65535)
@@ -777,6 +945,7 @@ public class Z80 {
 	}
 
 	public void ADDHLDE() {
+		flags();
 		int hl = (r.H << 8) + r.L;
 		hl += (r.D << 8) + r.E;
 		if (hl > 65535)
@@ -789,6 +958,7 @@ public class Z80 {
 	}
 
 	public void ADDHLHL() {
+		flags();
 		int hl = (r.H << 8) + r.L;
 		hl += (r.H << 8) + r.L;
 		if (hl > 65535)
@@ -801,6 +971,7 @@ public class Z80 {
 	}
 
 	public void ADDHLSP() {
+		flags();
 		int hl = (r.H << 8) + r.L;
 		hl += r.SP;
 		if (hl > 65535)
@@ -822,206 +993,151 @@ public class Z80 {
 	}
 
 	public void ADCr_b() {
+		flags();
 		int a = r.A;
 		r.A += r.B;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.B, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.B ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCr_c() {
+		flags();
 		int a = r.A;
 		r.A += r.C;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.C, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.C ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCr_d() {
+		flags();
 		int a = r.A;
 		r.A += r.D;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.D, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.D ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCr_e() {
+		flags();
 		int a = r.A;
 		r.A += r.E;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.E, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.E ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCr_h() {
+		flags();
 		int a = r.A;
 		r.A += r.H;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.H, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.H ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCr_l() {
+		flags();
 		int a = r.A;
 		r.A += r.L;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.L, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.L ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCr_a() {
+		flags();
 		int a = r.A;
 		r.A += r.A;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, r.A, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.A ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void ADCHL() {
+		flags();
 		int a = r.A;
 		int m = gb.mmu.readByte((r.H << 8) + r.L);
 		r.A += m;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ m ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
 	public void ADCn() {
+		flags();
 		int a = r.A;
 		int m = gb.mmu.readByte(r.PC);
 		r.A += m;
 		r.PC++;
 		r.A += ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A > 255) ? 0x10 : 0;
+		addFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ m ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
 	public void SUBr_b() {
 		int a = r.A;
 		r.A -= r.B;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.B, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.B ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SUBr_c() {
 		int a = r.A;
 		r.A -= r.C;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.C, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.C ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SUBr_d() {
 		int a = r.A;
 		r.A -= r.D;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.D, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.D ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SUBr_e() {
 		int a = r.A;
 		r.A -= r.E;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.E, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.E ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SUBr_h() {
 		int a = r.A;
 		r.A -= r.H;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.H, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.H ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SUBr_l() {
 		int a = r.A;
 		r.A -= r.L;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.L, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.L ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SUBr_a() {
 		int a = r.A;
 		r.A -= r.A;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.A, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.A ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
@@ -1029,12 +1145,8 @@ public class Z80 {
 		int a = r.A;
 		int m = gb.mmu.readByte((r.H << 8) + r.L);
 		r.A -= m;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ m ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
@@ -1043,216 +1155,150 @@ public class Z80 {
 		int m = gb.mmu.readByte(r.PC);
 		r.A -= m;
 		r.PC++;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ m ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
 	public void SBCr_b() {
+		flags();
 		int a = r.A;
 		r.A -= r.B;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.B, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.B ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCr_c() {
+		flags();
 		int a = r.A;
 		r.A -= r.C;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.C, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.C ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCr_d() {
+		flags();
 		int a = r.A;
 		r.A -= r.D;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.D, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.D ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCr_e() {
+		flags();
 		int a = r.A;
 		r.A -= r.E;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.E, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.E ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCr_h() {
+		flags();
 		int a = r.A;
 		r.A -= r.H;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.H, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.H ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCr_l() {
+		flags();
 		int a = r.A;
 		r.A -= r.L;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.L, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.L ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCr_a() {
+		flags();
 		int a = r.A;
 		r.A -= r.A;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, r.A, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.A ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 1;
 	}
 
 	public void SBCHL() {
+		flags();
 		int a = r.A;
 		int m = gb.mmu.readByte((r.H << 8) + r.L);
 		r.A -= m;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ m ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
 	public void SBCn() {
+		flags();
 		int a = r.A;
 		int m = gb.mmu.readByte(r.PC);
 		r.A -= m;
 		r.PC++;
 		r.A -= ((r.F & 0x10) > 0) ? 1 : 0;
-		r.F = (r.A < 0) ? 0x50 : 0x40;
+		subFlags(a, m, r.A);
 		r.A &= 255;
-		if (r.A == 0)
-			r.F |= 0x80;
-		if (((r.A ^ m ^ a) & 0x10) > 0)
-			r.F |= 0x20;
 		r.M = 2;
 	}
 
 	public void CPr_b() {
 		int i = r.A;
 		i -= r.B;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.B ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.B, i);
 		r.M = 1;
 	}
 
 	public void CPr_c() {
 		int i = r.A;
 		i -= r.C;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.C ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.C, i);
 		r.M = 1;
 	}
 
 	public void CPr_d() {
 		int i = r.A;
 		i -= r.D;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.D ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.D, i);
 		r.M = 1;
 	}
 
 	public void CPr_e() {
 		int i = r.A;
 		i -= r.E;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.E ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.E, i);
 		r.M = 1;
 	}
 
 	public void CPr_h() {
 		int i = r.A;
 		i -= r.H;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.H ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.H, i);
 		r.M = 1;
 	}
 
 	public void CPr_l() {
 		int i = r.A;
 		i -= r.L;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.L ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.L, i);
 		r.M = 1;
 	}
 
 	public void CPr_a() {
 		int i = r.A;
 		i -= r.A;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ r.A ^ i) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, r.A, i);
 		r.M = 1;
 	}
 
@@ -1260,12 +1306,7 @@ public class Z80 {
 		int i = r.A;
 		int m = gb.mmu.readByte((r.H << 8) + r.L);
 		i -= m;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ i ^ m) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, m, i);
 		r.M = 2;
 	}
 
@@ -1274,16 +1315,12 @@ public class Z80 {
 		int m = gb.mmu.readByte(r.PC);
 		i -= m;
 		r.PC++;
-		r.F = (i < 0) ? 0x50 : 0x40;
-		i &= 255;
-		if (i == 0)
-			r.F |= 0x80;
-		if (((r.A ^ i ^ m) & 0x10) > 0)
-			r.F |= 0x20;
+		subFlags(r.A, m, i);
 		r.M = 2;
 	}
 
 	public void DAA() {
+		flags();
 		int a = r.A;
 		if (((r.F & 0x20) > 0) || ((r.A & 15) > 9))
 			r.A += 6;
@@ -1298,56 +1335,56 @@ public class Z80 {
 	public void ANDr_b() {
 		r.A &= r.B;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDr_c() {
 		r.A &= r.C;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDr_d() {
 		r.A &= r.D;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDr_e() {
 		r.A &= r.E;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDr_h() {
 		r.A &= r.H;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDr_l() {
 		r.A &= r.L;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDr_a() {
 		r.A &= r.A;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ANDHL() {
 		r.A &= gb.mmu.readByte((r.H << 8) + r.L);
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 2;
 	}
 
@@ -1355,63 +1392,63 @@ public class Z80 {
 		r.A &= gb.mmu.readByte(r.PC);
 		r.PC++;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 2;
 	}
 
 	public void ORr_b() {
 		r.A |= r.B;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORr_c() {
 		r.A |= r.C;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORr_d() {
 		r.A |= r.D;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORr_e() {
 		r.A |= r.E;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORr_h() {
 		r.A |= r.H;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORr_l() {
 		r.A |= r.L;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORr_a() {
 		r.A |= r.A;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void ORHL() {
 		r.A |= gb.mmu.readByte((r.H << 8) + r.L);
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 2;
 	}
 
@@ -1419,63 +1456,63 @@ public class Z80 {
 		r.A |= gb.mmu.readByte(r.PC);
 		r.PC++;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 2;
 	}
 
 	public void XORr_b() {
 		r.A ^= r.B;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORr_c() {
 		r.A ^= r.C;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORr_d() {
 		r.A ^= r.D;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORr_e() {
 		r.A ^= r.E;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORr_h() {
 		r.A ^= r.H;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORr_l() {
 		r.A ^= r.L;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORr_a() {
 		r.A ^= r.A;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
 	public void XORHL() {
 		r.A ^= gb.mmu.readByte((r.H << 8) + r.L);
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 2;
 	}
 
@@ -1483,56 +1520,56 @@ public class Z80 {
 		r.A ^= gb.mmu.readByte(r.PC);
 		r.PC++;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 2;
 	}
 
 	public void INCr_b() {
 		r.B++;
 		r.B &= 255;
-		r.F = (r.B > 0) ? 0 : 0x80;
+		zeroFlags(r.B);
 		r.M = 1;
 	}
 
 	public void INCr_c() {
 		r.C++;
 		r.C &= 255;
-		r.F = (r.C > 0) ? 0 : 0x80;
+		zeroFlags(r.C);
 		r.M = 1;
 	}
 
 	public void INCr_d() {
 		r.D++;
 		r.D &= 255;
-		r.F = (r.D > 0) ? 0 : 0x80;
+		zeroFlags(r.D);
 		r.M = 1;
 	}
 
 	public void INCr_e() {
 		r.E++;
 		r.E &= 255;
-		r.F = (r.E > 0) ? 0 : 0x80;
+		zeroFlags(r.E);
 		r.M = 1;
 	}
 
 	public void INCr_h() {
 		r.H++;
 		r.H &= 255;
-		r.F = (r.H > 0) ? 0 : 0x80;
+		zeroFlags(r.H);
 		r.M = 1;
 	}
 
 	public void INCr_l() {
 		r.L++;
 		r.L &= 255;
-		r.F = (r.L > 0) ? 0 : 0x80;
+		zeroFlags(r.L);
 		r.M = 1;
 	}
 
 	public void INCr_a() {
 		r.A++;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
@@ -1540,56 +1577,56 @@ public class Z80 {
 		int i = gb.mmu.readByte((r.H << 8) + r.L) + 1;
 		i &= 255;
 		gb.mmu.writeByte((r.H << 8) + r.L, i);
-		r.F = (i > 0) ? 0 : 0x80;
+		zeroFlags(i);
 		r.M = 3;
 	}
 
 	public void DECr_b() {
 		r.B--;
 		r.B &= 255;
-		r.F = (r.B > 0) ? 0 : 0x80;
+		zeroFlags(r.B);
 		r.M = 1;
 	}
 
 	public void DECr_c() {
 		r.C--;
 		r.C &= 255;
-		r.F = (r.C > 0) ? 0 : 0x80;
+		zeroFlags(r.C);
 		r.M = 1;
 	}
 
 	public void DECr_d() {
 		r.D--;
 		r.D &= 255;
-		r.F = (r.D > 0) ? 0 : 0x80;
+		zeroFlags(r.D);
 		r.M = 1;
 	}
 
 	public void DECr_e() {
 		r.E--;
 		r.E &= 255;
-		r.F = (r.E > 0) ? 0 : 0x80;
+		zeroFlags(r.E);
 		r.M = 1;
 	}
 
 	public void DECr_h() {
 		r.H--;
 		r.H &= 255;
-		r.F = (r.H > 0) ? 0 : 0x80;
+		zeroFlags(r.H);
 		r.M = 1;
 	}
 
 	public void DECr_l() {
 		r.L--;
 		r.L &= 255;
-		r.F = (r.L > 0) ? 0 : 0x80;
+		zeroFlags(r.L);
 		r.M = 1;
 	}
 
 	public void DECr_a() {
 		r.A--;
 		r.A &= 255;
-		r.F = (r.A > 0) ? 0 : 0x80;
+		zeroFlags(r.A);
 		r.M = 1;
 	}
 
@@ -1597,7 +1634,7 @@ public class Z80 {
 		int i = gb.mmu.readByte((r.H << 8) + r.L) - 1;
 		i &= 255;
 		gb.mmu.writeByte((r.H << 8) + r.L, i);
-		r.F = (i > 0) ? 0 : 0x80;
+		zeroFlags(i);
 		r.M = 3;
 	}
 
@@ -1655,6 +1692,7 @@ public class Z80 {
 
 	/*--- Bit manipulation ---*/
 	public void BIT0b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x01) > 0) ? 0 : 0x80;
@@ -1662,6 +1700,7 @@ public class Z80 {
 	}
 
 	public void BIT0c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x01) > 0) ? 0 : 0x80;
@@ -1669,6 +1708,7 @@ public class Z80 {
 	}
 
 	public void BIT0d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x01) > 0) ? 0 : 0x80;
@@ -1676,6 +1716,7 @@ public class Z80 {
 	}
 
 	public void BIT0e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x01) > 0) ? 0 : 0x80;
@@ -1683,6 +1724,7 @@ public class Z80 {
 	}
 
 	public void BIT0h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x01) > 0) ? 0 : 0x80;
@@ -1690,6 +1732,7 @@ public class Z80 {
 	}
 
 	public void BIT0l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x01) > 0) ? 0 : 0x80;
@@ -1697,6 +1740,7 @@ public class Z80 {
 	}
 
 	public void BIT0a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x01) > 0) ? 0 : 0x80;
@@ -1704,6 +1748,7 @@ public class Z80 {
 	}
 
 	public void BIT0m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x01) > 0) ? 0 : 0x80;
@@ -1795,6 +1840,7 @@ public class Z80 {
 	}
 
 	public void BIT1b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x02) > 0) ? 0 : 0x80;
@@ -1802,6 +1848,7 @@ public class Z80 {
 	}
 
 	public void BIT1c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x02) > 0) ? 0 : 0x80;
@@ -1809,6 +1856,7 @@ public class Z80 {
 	}
 
 	public void BIT1d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x02) > 0) ? 0 : 0x80;
@@ -1816,6 +1864,7 @@ public class Z80 {
 	}
 
 	public void BIT1e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x02) > 0) ? 0 : 0x80;
@@ -1823,6 +1872,7 @@ public class Z80 {
 	}
 
 	public void BIT1h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x02) > 0) ? 0 : 0x80;
@@ -1830,6 +1880,7 @@ public class Z80 {
 	}
 
 	public void BIT1l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x02) > 0) ? 0 : 0x80;
@@ -1837,6 +1888,7 @@ public class Z80 {
 	}
 
 	public void BIT1a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x02) > 0) ? 0 : 0x80;
@@ -1844,6 +1896,7 @@ public class Z80 {
 	}
 
 	public void BIT1m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x02) > 0) ? 0 : 0x80;
@@ -1935,6 +1988,7 @@ public class Z80 {
 	}
 
 	public void BIT2b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x04) > 0) ? 0 : 0x80;
@@ -1942,6 +1996,7 @@ public class Z80 {
 	}
 
 	public void BIT2c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x04) > 0) ? 0 : 0x80;
@@ -1949,6 +2004,7 @@ public class Z80 {
 	}
 
 	public void BIT2d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x04) > 0) ? 0 : 0x80;
@@ -1956,6 +2012,7 @@ public class Z80 {
 	}
 
 	public void BIT2e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x04) > 0) ? 0 : 0x80;
@@ -1963,6 +2020,7 @@ public class Z80 {
 	}
 
 	public void BIT2h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x04) > 0) ? 0 : 0x80;
@@ -1970,6 +2028,7 @@ public class Z80 {
 	}
 
 	public void BIT2l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x04) > 0) ? 0 : 0x80;
@@ -1977,6 +2036,7 @@ public class Z80 {
 	}
 
 	public void BIT2a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x04) > 0) ? 0 : 0x80;
@@ -1984,6 +2044,7 @@ public class Z80 {
 	}
 
 	public void BIT2m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x04) > 0) ? 0 : 0x80;
@@ -2075,6 +2136,7 @@ public class Z80 {
 	}
 
 	public void BIT3b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x08) > 0) ? 0 : 0x80;
@@ -2082,6 +2144,7 @@ public class Z80 {
 	}
 
 	public void BIT3c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x08) > 0) ? 0 : 0x80;
@@ -2089,6 +2152,7 @@ public class Z80 {
 	}
 
 	public void BIT3d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x08) > 0) ? 0 : 0x80;
@@ -2096,6 +2160,7 @@ public class Z80 {
 	}
 
 	public void BIT3e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x08) > 0) ? 0 : 0x80;
@@ -2103,6 +2168,7 @@ public class Z80 {
 	}
 
 	public void BIT3h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x08) > 0) ? 0 : 0x80;
@@ -2110,6 +2176,7 @@ public class Z80 {
 	}
 
 	public void BIT3l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x08) > 0) ? 0 : 0x80;
@@ -2117,6 +2184,7 @@ public class Z80 {
 	}
 
 	public void BIT3a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x08) > 0) ? 0 : 0x80;
@@ -2124,6 +2192,7 @@ public class Z80 {
 	}
 
 	public void BIT3m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x08) > 0) ? 0 : 0x80;
@@ -2215,6 +2284,7 @@ public class Z80 {
 	}
 
 	public void BIT4b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x10) > 0) ? 0 : 0x80;
@@ -2222,6 +2292,7 @@ public class Z80 {
 	}
 
 	public void BIT4c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x10) > 0) ? 0 : 0x80;
@@ -2229,6 +2300,7 @@ public class Z80 {
 	}
 
 	public void BIT4d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x10) > 0) ? 0 : 0x80;
@@ -2236,6 +2308,7 @@ public class Z80 {
 	}
 
 	public void BIT4e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x10) > 0) ? 0 : 0x80;
@@ -2243,6 +2316,7 @@ public class Z80 {
 	}
 
 	public void BIT4h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x10) > 0) ? 0 : 0x80;
@@ -2250,6 +2324,7 @@ public class Z80 {
 	}
 
 	public void BIT4l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x10) > 0) ? 0 : 0x80;
@@ -2257,6 +2332,7 @@ public class Z80 {
 	}
 
 	public void BIT4a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x10) > 0) ? 0 : 0x80;
@@ -2264,6 +2340,7 @@ public class Z80 {
 	}
 
 	public void BIT4m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x10) > 0) ? 0 : 0x80;
@@ -2355,6 +2432,7 @@ public class Z80 {
 	}
 
 	public void BIT5b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x20) > 0) ? 0 : 0x80;
@@ -2362,6 +2440,7 @@ public class Z80 {
 	}
 
 	public void BIT5c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x20) > 0) ? 0 : 0x80;
@@ -2369,6 +2448,7 @@ public class Z80 {
 	}
 
 	public void BIT5d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x20) > 0) ? 0 : 0x80;
@@ -2376,6 +2456,7 @@ public class Z80 {
 	}
 
 	public void BIT5e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x20) > 0) ? 0 : 0x80;
@@ -2383,6 +2464,7 @@ public class Z80 {
 	}
 
 	public void BIT5h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x20) > 0) ? 0 : 0x80;
@@ -2390,6 +2472,7 @@ public class Z80 {
 	}
 
 	public void BIT5l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x20) > 0) ? 0 : 0x80;
@@ -2397,6 +2480,7 @@ public class Z80 {
 	}
 
 	public void BIT5a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x20) > 0) ? 0 : 0x80;
@@ -2404,6 +2488,7 @@ public class Z80 {
 	}
 
 	public void BIT5m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x20) > 0) ? 0 : 0x80;
@@ -2495,6 +2580,7 @@ public class Z80 {
 	}
 
 	public void BIT6b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x40) > 0) ? 0 : 0x80;
@@ -2502,6 +2588,7 @@ public class Z80 {
 	}
 
 	public void BIT6c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x40) > 0) ? 0 : 0x80;
@@ -2509,6 +2596,7 @@ public class Z80 {
 	}
 
 	public void BIT6d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x40) > 0) ? 0 : 0x80;
@@ -2516,6 +2604,7 @@ public class Z80 {
 	}
 
 	public void BIT6e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x40) > 0) ? 0 : 0x80;
@@ -2523,6 +2612,7 @@ public class Z80 {
 	}
 
 	public void BIT6h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x40) > 0) ? 0 : 0x80;
@@ -2530,6 +2620,7 @@ public class Z80 {
 	}
 
 	public void BIT6l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x40) > 0) ? 0 : 0x80;
@@ -2537,6 +2628,7 @@ public class Z80 {
 	}
 
 	public void BIT6a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x40) > 0) ? 0 : 0x80;
@@ -2544,6 +2636,7 @@ public class Z80 {
 	}
 
 	public void BIT6m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x40) > 0) ? 0 : 0x80;
@@ -2635,6 +2728,7 @@ public class Z80 {
 	}
 
 	public void BIT7b() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.B & 0x80) > 0) ? 0 : 0x80;
@@ -2642,6 +2736,7 @@ public class Z80 {
 	}
 
 	public void BIT7c() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.C & 0x80) > 0) ? 0 : 0x80;
@@ -2649,6 +2744,7 @@ public class Z80 {
 	}
 
 	public void BIT7d() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.D & 0x80) > 0) ? 0 : 0x80;
@@ -2656,6 +2752,7 @@ public class Z80 {
 	}
 
 	public void BIT7e() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.E & 0x80) > 0) ? 0 : 0x80;
@@ -2663,6 +2760,7 @@ public class Z80 {
 	}
 
 	public void BIT7h() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.H & 0x80) > 0) ? 0 : 0x80;
@@ -2670,6 +2768,7 @@ public class Z80 {
 	}
 
 	public void BIT7l() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.L & 0x80) > 0) ? 0 : 0x80;
@@ -2677,6 +2776,7 @@ public class Z80 {
 	}
 
 	public void BIT7a() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((r.A & 0x80) > 0) ? 0 : 0x80;
@@ -2684,6 +2784,7 @@ public class Z80 {
 	}
 
 	public void BIT7m() {
+		flags();
 		r.F &= 0x1F;
 		r.F |= 0x20;
 		r.F = ((gb.mmu.readByte((r.H << 8) + r.L) & 0x80) > 0) ? 0 : 0x80;
@@ -2775,6 +2876,7 @@ public class Z80 {
 	}
 
 	public void RLA() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.A & 0x80) > 0) ? 0x10 : 0;
 		r.A = (r.A << 1) + ci;
@@ -2784,6 +2886,7 @@ public class Z80 {
 	}
 
 	public void RLCA() {
+		flags();
 		int ci = ((r.A & 0x80) > 0) ? 1 : 0;
 		int co = ((r.A & 0x80) > 0) ? 0x10 : 0;
 		r.A = (r.A << 1) + ci;
@@ -2793,6 +2896,7 @@ public class Z80 {
 	}
 
 	public void RRA() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.A & 1) > 0) ? 0x10 : 0;
 		r.A = (r.A >> 1) + ci;
@@ -2802,6 +2906,7 @@ public class Z80 {
 	}
 
 	public void RRCA() {
+		flags();
 		int ci = ((r.A & 1) > 0) ? 0x80 : 0;
 		int co = ((r.A & 1) > 0) ? 0x10 : 0;
 		r.A = (r.A >> 1) + ci;
@@ -2811,6 +2916,7 @@ public class Z80 {
 	}
 
 	public void RLr_b() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.B & 0x80) > 0) ? 0x10 : 0;
 		r.B = (r.B << 1) + ci;
@@ -2821,6 +2927,7 @@ public class Z80 {
 	}
 
 	public void RLr_c() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.C & 0x80) > 0) ? 0x10 : 0;
 		r.C = (r.C << 1) + ci;
@@ -2831,6 +2938,7 @@ public class Z80 {
 	}
 
 	public void RLr_d() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.D & 0x80) > 0) ? 0x10 : 0;
 		r.D = (r.D << 1) + ci;
@@ -2841,6 +2949,7 @@ public class Z80 {
 	}
 
 	public void RLr_e() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.E & 0x80) > 0) ? 0x10 : 0;
 		r.E = (r.E << 1) + ci;
@@ -2851,6 +2960,7 @@ public class Z80 {
 	}
 
 	public void RLr_h() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.H & 0x80) > 0) ? 0x10 : 0;
 		r.H = (r.H << 1) + ci;
@@ -2861,6 +2971,7 @@ public class Z80 {
 	}
 
 	public void RLr_l() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.L & 0x80) > 0) ? 0x10 : 0;
 		r.L = (r.L << 1) + ci;
@@ -2871,6 +2982,7 @@ public class Z80 {
 	}
 
 	public void RLr_a() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((r.A & 0x80) > 0) ? 0x10 : 0;
 		r.A = (r.A << 1) + ci;
@@ -2881,6 +2993,7 @@ public class Z80 {
 	}
 
 	public void RLHL() {
+		flags();
 		int i = gb.mmu.readByte((r.H << 8) + r.L);
 		int ci = ((r.F & 0x10) > 0) ? 1 : 0;
 		int co = ((i & 0x80) > 0) ? 0x10 : 0;
@@ -2893,6 +3006,7 @@ public class Z80 {
 	}
 
 	public void RLCr_b() {
+		flags();
 		int ci = ((r.B & 0x80) > 0) ? 1 : 0;
 		int co = ((r.B & 0x80) > 0) ? 0x10 : 0;
 		r.B = (r.B << 1) + ci;
@@ -2903,6 +3017,7 @@ public class Z80 {
 	}
 
 	public void RLCr_c() {
+		flags();
 		int ci = ((r.C & 0x80) > 0) ? 1 : 0;
 		int co = ((r.C & 0x80) > 0) ? 0x10 : 0;
 		r.C = (r.C << 1) + ci;
@@ -2913,6 +3028,7 @@ public class Z80 {
 	}
 
 	public void RLCr_d() {
+		flags();
 		int ci = ((r.D & 0x80) > 0) ? 1 : 0;
 		int co = ((r.D & 0x80) > 0) ? 0x10 : 0;
 		r.D = (r.D << 1) + ci;
@@ -2923,6 +3039,7 @@ public class Z80 {
 	}
 
 	public void RLCr_e() {
+		flags();
 		int ci = ((r.E & 0x80) > 0) ? 1 : 0;
 		int co = ((r.E & 0x80) > 0) ? 0x10 : 0;
 		r.E = (r.E << 1) + ci;
@@ -2933,6 +3050,7 @@ public class Z80 {
 	}
 
 	public void RLCr_h() {
+		flags();
 		int ci = ((r.H & 0x80) > 0) ? 1 : 0;
 		int co = ((r.H & 0x80) > 0) ? 0x10 : 0;
 		r.H = (r.H << 1) + ci;
@@ -2943,6 +3061,7 @@ public class Z80 {
 	}
 
 	public void RLCr_l() {
+		flags();
 		int ci = ((r.L & 0x80) > 0) ? 1 : 0;
 		int co = ((r.L & 0x80) > 0) ? 0x10 : 0;
 		r.L = (r.L << 1) + ci;
@@ -2953,6 +3072,7 @@ public class Z80 {
 	}
 
 	public void RLCr_a() {
+		flags();
 		int ci = ((r.A & 0x80) > 0) ? 1 : 0;
 		int co = ((r.A & 0x80) > 0) ? 0x10 : 0;
 		r.A = (r.A << 1) + ci;
@@ -2963,6 +3083,7 @@ public class Z80 {
 	}
 
 	public void RLCHL() {
+		flags();
 		int i = gb.mmu.readByte((r.H << 8) + r.L);
 		int ci = ((i & 0x80) > 0) ? 1 : 0;
 		int co = ((i & 0x80) > 0) ? 0x10 : 0;
@@ -2975,6 +3096,7 @@ public class Z80 {
 	}
 
 	public void RRr_b() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.B & 1) > 0) ? 0x10 : 0;
 		r.B = (r.B >> 1) + ci;
@@ -2985,6 +3107,7 @@ public class Z80 {
 	}
 
 	public void RRr_c() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.C & 1) > 0) ? 0x10 : 0;
 		r.C = (r.C >> 1) + ci;
@@ -2995,6 +3118,7 @@ public class Z80 {
 	}
 
 	public void RRr_d() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.D & 1) > 0) ? 0x10 : 0;
 		r.D = (r.D >> 1) + ci;
@@ -3005,6 +3129,7 @@ public class Z80 {
 	}
 
 	public void RRr_e() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.E & 1) > 0) ? 0x10 : 0;
 		r.E = (r.E >> 1) + ci;
@@ -3015,6 +3140,7 @@ public class Z80 {
 	}
 
 	public void RRr_h() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.H & 1) > 0) ? 0x10 : 0;
 		r.H = (r.H >> 1) + ci;
@@ -3025,6 +3151,7 @@ public class Z80 {
 	}
 
 	public void RRr_l() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.L & 1) > 0) ? 0x10 : 0;
 		r.L = (r.L >> 1) + ci;
@@ -3035,6 +3162,7 @@ public class Z80 {
 	}
 
 	public void RRr_a() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((r.A & 1) > 0) ? 0x10 : 0;
 		r.A = (r.A >> 1) + ci;
@@ -3045,6 +3173,7 @@ public class Z80 {
 	}
 
 	public void RRHL() {
+		flags();
 		int i = gb.mmu.readByte((r.H << 8) + r.L);
 		int ci = ((r.F & 0x10) > 0) ? 0x80 : 0;
 		int co = ((i & 1) > 0) ? 0x10 : 0;
@@ -3057,6 +3186,7 @@ public class Z80 {
 	}
 
 	public void RRCr_b() {
+		flags();
 		int ci = ((r.B & 1) > 0) ? 0x80 : 0;
 		int co = ((r.B & 1) > 0) ? 0x10 : 0;
 		r.B = (r.B >> 1) + ci;
@@ -3067,6 +3197,7 @@ public class Z80 {
 	}
 
 	public void RRCr_c() {
+		flags();
 		int ci = ((r.C & 1) > 0) ? 0x80 : 0;
 		int co = ((r.C & 1) > 0) ? 0x10 : 0;
 		r.C = (r.C >> 1) + ci;
@@ -3077,6 +3208,7 @@ public class Z80 {
 	}
 
 	public void RRCr_d() {
+		flags();
 		int ci = ((r.D & 1) > 0) ? 0x80 : 0;
 		int co = ((r.D & 1) > 0) ? 0x10 : 0;
 		r.D = (r.D >> 1) + ci;
@@ -3087,6 +3219,7 @@ public class Z80 {
 	}
 
 	public void RRCr_e() {
+		flags();
 		int ci = ((r.E & 1) > 0) ? 0x80 : 0;
 		int co = ((r.E & 1) > 0) ? 0x10 : 0;
 		r.E = (r.E >> 1) + ci;
@@ -3097,6 +3230,7 @@ public class Z80 {
 	}
 
 	public void RRCr_h() {
+		flags();
 		int ci = ((r.H & 1) > 0) ? 0x80 : 0;
 		int co = ((r.H & 1) > 0) ? 0x10 : 0;
 		r.H = (r.H >> 1) + ci;
@@ -3107,6 +3241,7 @@ public class Z80 {
 	}
 
 	public void RRCr_l() {
+		flags();
 		int ci = ((r.L & 1) > 0) ? 0x80 : 0;
 		int co = ((r.L & 1) > 0) ? 0x10 : 0;
 		r.L = (r.L >> 1) + ci;
@@ -3117,6 +3252,7 @@ public class Z80 {
 	}
 
 	public void RRCr_a() {
+		flags();
 		int ci = ((r.A & 1) > 0) ? 0x80 : 0;
 		int co = ((r.A & 1) > 0) ? 0x10 : 0;
 		r.A = (r.A >> 1) + ci;
@@ -3127,6 +3263,7 @@ public class Z80 {
 	}
 
 	public void RRCHL() {
+		flags();
 		int i = gb.mmu.readByte((r.H << 8) + r.L);
 		int ci = ((i & 1) > 0) ? 0x80 : 0;
 		int co = ((i & 1) > 0) ? 0x10 : 0;
@@ -3139,6 +3276,7 @@ public class Z80 {
 	}
 
 	public void SLAr_b() {
+		flags();
 		int co = ((r.B & 0x80) > 0) ? 0x10 : 0;
 		r.B = (r.B << 1) & 255;
 		r.F = ((r.B) > 0) ? 0 : 0x80;
@@ -3147,6 +3285,7 @@ public class Z80 {
 	}
 
 	public void SLAr_c() {
+		flags();
 		int co = ((r.C & 0x80) > 0) ? 0x10 : 0;
 		r.C = (r.C << 1) & 255;
 		r.F = ((r.C) > 0) ? 0 : 0x80;
@@ -3155,6 +3294,7 @@ public class Z80 {
 	}
 
 	public void SLAr_d() {
+		flags();
 		int co = ((r.D & 0x80) > 0) ? 0x10 : 0;
 		r.D = (r.D << 1) & 255;
 		r.F = ((r.D) > 0) ? 0 : 0x80;
@@ -3163,6 +3303,7 @@ public class Z80 {
 	}
 
 	public void SLAr_e() {
+		flags();
 		int co = ((r.E & 0x80) > 0) ? 0x10 : 0;
 		r.E = (r.E << 1) & 255;
 		r.F = ((r.E) > 0) ? 0 : 0x80;
@@ -3171,6 +3312,7 @@ public class Z80 {
 	}
 
 	public void SLAr_h() {
+		flags();
 		int co = ((r.H & 0x80) > 0) ? 0x10 : 0;
 		r.H = (r.H << 1) & 255;
 		r.F = ((r.H) > 0) ? 0 : 0x80;
@@ -3179,6 +3321,7 @@ public class Z80 {
 	}
 
 	public void SLAr_l() {
+		flags();
 		int co = ((r.L & 0x80) > 0) ? 0x10 : 0;
 		r.L = (r.L << 1) & 255;
 		r.F = ((r.L) > 0) ? 0 : 0x80;
@@ -3187,6 +3330,7 @@ public class Z80 {
 	}
 
 	public void SLAr_a() {
+		flags();
 		int co = ((r.A & 0x80) > 0) ? 0x10 : 0;
 		r.A = (r.A << 1) & 255;
 		r.F = ((r.A) > 0) ? 0 : 0x80;
@@ -3195,6 +3339,7 @@ public class Z80 {
 	}
 
 	public void SLLr_b() {
+		flags();
 		int co = ((r.B & 0x80) > 0) ? 0x10 : 0;
 		r.B = (r.B << 1) & 255 + 1;
 		r.F = ((r.B) > 0) ? 0 : 0x80;
@@ -3203,6 +3348,7 @@ public class Z80 {
 	}
 
 	public void SLLr_c() {
+		flags();
 		int co = ((r.C & 0x80) > 0) ? 0x10 : 0;
 		r.C = (r.C << 1) & 255 + 1;
 		r.F = ((r.C) > 0) ? 0 : 0x80;
@@ -3211,6 +3357,7 @@ public class Z80 {
 	}
 
 	public void SLLr_d() {
+		flags();
 		int co = ((r.D & 0x80) > 0) ? 0x10 : 0;
 		r.D = (r.D << 1) & 255 + 1;
 		r.F = ((r.D) > 0) ? 0 : 0x80;
@@ -3219,6 +3366,7 @@ public class Z80 {
 	}
 
 	public void SLLr_e() {
+		flags();
 		int co = ((r.E & 0x80) > 0) ? 0x10 : 0;
 		r.E = (r.E << 1) & 255 + 1;
 		r.F = ((r.E) > 0) ? 0 : 0x80;
@@ -3227,6 +3375,7 @@ public class Z80 {
 	}
 
 	public void SLLr_h() {
+		flags();
 		int co = ((r.H & 0x80) > 0) ? 0x10 : 0;
 		r.H = (r.H << 1) & 255 + 1;
 		r.F = ((r.H) > 0) ? 0 : 0x80;
@@ -3235,6 +3384,7 @@ public class Z80 {
 	}
 
 	public void SLLr_l() {
+		flags();
 		int co = ((r.L & 0x80) > 0) ? 0x10 : 0;
 		r.L = (r.L << 1) & 255 + 1;
 		r.F = ((r.L) > 0) ? 0 : 0x80;
@@ -3243,6 +3393,7 @@ public class Z80 {
 	}
 
 	public void SLLr_a() {
+		flags();
 		int co = ((r.A & 0x80) > 0) ? 0x10 : 0;
 		r.A = (r.A << 1) & 255 + 1;
 		r.F = ((r.A) > 0) ? 0 : 0x80;
@@ -3251,6 +3402,7 @@ public class Z80 {
 	}
 
 	public void SRAr_b() {
+		flags();
 		int ci = r.B & 0x80;
 		int co = ((r.B & 1) > 0) ? 0x10 : 0;
 		r.B = ((r.B >> 1) + ci) & 255;
@@ -3260,6 +3412,7 @@ public class Z80 {
 	}
 
 	public void SRAr_c() {
+		flags();
 		int ci = r.C & 0x80;
 		int co = ((r.C & 1) > 0) ? 0x10 : 0;
 		r.C = ((r.C >> 1) + ci) & 255;
@@ -3269,6 +3422,7 @@ public class Z80 {
 	}
 
 	public void SRAr_d() {
+		flags();
 		int ci = r.D & 0x80;
 		int co = ((r.D & 1) > 0) ? 0x10 : 0;
 		r.D = ((r.D >> 1) + ci) & 255;
@@ -3278,6 +3432,7 @@ public class Z80 {
 	}
 
 	public void SRAr_e() {
+		flags();
 		int ci = r.E & 0x80;
 		int co = ((r.E & 1) > 0) ? 0x10 : 0;
 		r.E = ((r.E >> 1) + ci) & 255;
@@ -3287,6 +3442,7 @@ public class Z80 {
 	}
 
 	public void SRAr_h() {
+		flags();
 		int ci = r.H & 0x80;
 		int co = ((r.H & 1) > 0) ? 0x10 : 0;
 		r.H = ((r.H >> 1) + ci) & 255;
@@ -3296,6 +3452,7 @@ public class Z80 {
 	}
 
 	public void SRAr_l() {
+		flags();
 		int ci = r.L & 0x80;
 		int co = ((r.L & 1) > 0) ? 0x10 : 0;
 		r.L = ((r.L >> 1) + ci) & 255;
@@ -3305,6 +3462,7 @@ public class Z80 {
 	}
 
 	public void SRAr_a() {
+		flags();
 		int ci = r.A & 0x80;
 		int co = ((r.A & 1) > 0) ? 0x10 : 0;
 		r.A = ((r.A >> 1) + ci) & 255;
@@ -3314,6 +3472,7 @@ public class Z80 {
 	}
 
 	public void SRLr_b() {
+		flags();
 		int co = ((r.B & 1) > 0) ? 0x10 : 0;
 		r.B = (r.B >> 1) & 255;
 		r.F = ((r.B) > 0) ? 0 : 0x80;
@@ -3322,6 +3481,7 @@ public class Z80 {
 	}
 
 	public void SRLr_c() {
+		flags();
 		int co = ((r.C & 1) > 0) ? 0x10 : 0;
 		r.C = (r.C >> 1) & 255;
 		r.F = ((r.C) > 0) ? 0 : 0x80;
@@ -3330,6 +3490,7 @@ public class Z80 {
 	}
 
 	public void SRLr_d() {
+		flags();
 		int co = ((r.D & 1) > 0) ? 0x10 : 0;
 		r.D = (r.D >> 1) & 255;
 		r.F = ((r.D) > 0) ? 0 : 0x80;
@@ -3338,6 +3499,7 @@ public class Z80 {
 	}
 
 	public void SRLr_e() {
+		flags();
 		int co = ((r.E & 1) > 0) ? 0x10 : 0;
 		r.E = (r.E >> 1) & 255;
 		r.F = ((r.E) > 0) ? 0 : 0x80;
@@ -3346,6 +3508,7 @@ public class Z80 {
 	}
 
 	public void SRLr_h() {
+		flags();
 		int co = ((r.H & 1) > 0) ? 0x10 : 0;
 		r.H = (r.H >> 1) & 255;
 		r.F = ((r.H) > 0) ? 0 : 0x80;
@@ -3354,6 +3517,7 @@ public class Z80 {
 	}
 
 	public void SRLr_l() {
+		flags();
 		int co = ((r.L & 1) > 0) ? 0x10 : 0;
 		r.L = (r.L >> 1) & 255;
 		r.F = ((r.L) > 0) ? 0 : 0x80;
@@ -3362,6 +3526,7 @@ public class Z80 {
 	}
 
 	public void SRLr_a() {
+		flags();
 		int co = ((r.A & 1) > 0) ? 0x10 : 0;
 		r.A = (r.A >> 1) & 255;
 		r.F = ((r.A) > 0) ? 0 : 0x80;
@@ -3370,12 +3535,14 @@ public class Z80 {
 	}
 
 	public void CPL() {
+		flags();
 		r.A ^= 255;
 		r.F = (r.A > 0) ? 0 : 0x80;
 		r.M = 1;
 	}
 
 	public void NEG() {
+		flags();
 		r.A = 0 - r.A;
 		r.F = (r.A < 0) ? 0x10 : 0;
 		r.A &= 255;
@@ -3385,12 +3552,14 @@ public class Z80 {
 	}
 
 	public void CCF() {
+		flags();
 		int ci = ((r.F & 0x10) > 0) ? 0 : 0x10;
 		r.F = (r.F & 0xEF) + ci;
 		r.M = 1;
 	}
 
 	public void SCF() {
+		flags();
 		r.F |= 0x10;
 		r.M = 1;
 	}
@@ -3421,6 +3590,7 @@ public class Z80 {
 	}
 
 	public void PUSHAF() {
+		flags();
 		r.SP--;
 		gb.mmu.writeByte(r.SP, r.A);
 		r.SP--;
@@ -3453,6 +3623,7 @@ public class Z80 {
 	}
 
 	public void POPAF() {
+		flags();
 		r.F = gb.mmu.readByte(r.SP);
 		r.SP++;
 		r.A = gb.mmu.readByte(r.SP);
@@ -3472,6 +3643,7 @@ public class Z80 {
 	}
 
 	public void JPNZnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x80) == 0x00) {
 			r.PC = gb.mmu.readWord(r.PC);
@@ -3481,6 +3653,7 @@ public class Z80 {
 	}
 
 	public void JPZnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x80) == 0x80) {
 			r.PC = gb.mmu.readWord(r.PC);
@@ -3490,6 +3663,7 @@ public class Z80 {
 	}
 
 	public void JPNCnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x10) == 0x00) {
 			r.PC = gb.mmu.readWord(r.PC);
@@ -3499,6 +3673,7 @@ public class Z80 {
 	}
 
 	public void JPCnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x10) == 0x10) {
 			r.PC = gb.mmu.readWord(r.PC);
@@ -3518,6 +3693,7 @@ public class Z80 {
 	}
 
 	public void JRNZn() {
+		flags();
 		int i = gb.mmu.readByte(r.PC);
 		if (i > 127)
 			i = -((~i + 1) & 255);
@@ -3530,6 +3706,7 @@ public class Z80 {
 	}
 
 	public void JRZn() {
+		flags();
 		int i = gb.mmu.readByte(r.PC);
 		if (i > 127)
 			i = -((~i + 1) & 255);
@@ -3542,6 +3719,7 @@ public class Z80 {
 	}
 
 	public void JRNCn() {
+		flags();
 		int i = gb.mmu.readByte(r.PC);
 		if (i > 127)
 			i = -((~i + 1) & 255);
@@ -3554,6 +3732,7 @@ public class Z80 {
 	}
 
 	public void JRCn() {
+		flags();
 		int i = gb.mmu.readByte(r.PC);
 		if (i > 127)
 			i = -((~i + 1) & 255);
@@ -3586,6 +3765,7 @@ public class Z80 {
 	}
 
 	public void CALLNZnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x80) == 0x00) {
 			r.SP -= 2;
@@ -3597,6 +3777,7 @@ public class Z80 {
 	}
 
 	public void CALLZnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x80) == 0x80) {
 			r.SP -= 2;
@@ -3608,6 +3789,7 @@ public class Z80 {
 	}
 
 	public void CALLNCnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x10) == 0x00) {
 			r.SP -= 2;
@@ -3619,6 +3801,7 @@ public class Z80 {
 	}
 
 	public void CALLCnn() {
+		flags();
 		r.M = 3;
 		if ((r.F & 0x10) == 0x10) {
 			r.SP -= 2;
@@ -3644,6 +3827,7 @@ public class Z80 {
 	}
 
 	public void RETNZ() {
+		flags();
 		r.M = 1;
 		if ((r.F & 0x80) == 0x00) {
 			r.PC = gb.mmu.readWord(r.SP);
@@ -3653,6 +3837,7 @@ public class Z80 {
 	}
 
 	public void RETZ() {
+		flags();
 		r.M = 1;
 		if ((r.F & 0x80) == 0x80) {
 			r.PC = gb.mmu.readWord(r.SP);
@@ -3662,6 +3847,7 @@ public class Z80 {
 	}
 
 	public void RETNC() {
+		flags();
 		r.M = 1;
 		if ((r.F & 0x10) == 0x00) {
 			r.PC = gb.mmu.readWord(r.SP);
@@ -3671,6 +3857,7 @@ public class Z80 {
 	}
 
 	public void RETC() {
+		flags();
 		r.M = 1;
 		if ((r.F & 0x10) == 0x10) {
 			r.PC = gb.mmu.readWord(r.SP);
@@ -3803,7 +3990,80 @@ public class Z80 {
 	}
 
 	/*--- Helper functions ---*/
+	
+	/**
+	 * write any pending lazy flags to r.F, must be called before reading r.F from outside the Z80
+	 */
+	public void flags() {
+		if(LAZY_FLAGS) {
+			switch(flagOp) {
+				case FLAGS_ADD:
+					r.F = computeFlags(flagA, flagB, flagResult, 0);
+					break;
+				case FLAGS_SUB:
+					r.F = computeFlags(flagA, flagB, flagResult, 0x40);
+					break;
+				case FLAGS_ZERO:
+					r.F = ((flagResult & 255) > 0) ? 0 : 0x80;
+					break;
+			}
+			flagOp = FLAGS_NONE;
+		}
+	}
+	
+	/**
+	 * flags for an addition, result is the unmasked sum
+	 */
+	private void addFlags(int a, int b, int result) {
+		if(LAZY_FLAGS) {
+			flagOp = FLAGS_ADD;
+			flagA = a;
+			flagB = b;
+			flagResult = result;
+		} else {
+			r.F = computeFlags(a, b, result, 0);
+		}
+	}
+	
+	/**
+	 * flags for a subtraction or compare, result is the unmasked difference
+	 */
+	private void subFlags(int a, int b, int result) {
+		if(LAZY_FLAGS) {
+			flagOp = FLAGS_SUB;
+			flagA = a;
+			flagB = b;
+			flagResult = result;
+		} else {
+			r.F = computeFlags(a, b, result, 0x40);
+		}
+	}
+	
+	/**
+	 * only the zero flag is set, every other flag is cleared
+	 */
+	private void zeroFlags(int result) {
+		if(LAZY_FLAGS) {
+			flagOp = FLAGS_ZERO;
+			flagResult = result;
+		} else {
+			r.F = (result > 0) ? 0 : 0x80;
+		}
+	}
+	
+	private static int computeFlags(int a, int b, int result, int subtraction) {
+		int f = subtraction;
+		if (result > 255 || result < 0)
+			f |= 0x10;
+		if ((result & 255) == 0)
+			f |= 0x80;
+		if ((((result & 255) ^ b ^ a) & 0x10) > 0)
+			f |= 0x20;
+		return f;
+	}
+	
 	public void rsv() {
+		flags();
 		rsv.A = r.A;
 		rsv.B = r.B;
 		rsv.C = r.C;
@@ -3815,6 +4075,7 @@ public class Z80 {
 	}
 
 	public void rrs() {
+		flags();
 		r.A = rsv.A;
 		r.B = rsv.B;
 		r.C = rsv.C;
@@ -3829,7 +4090,14 @@ public class Z80 {
 		int i = gb.mmu.readByte(r.PC);
 		r.PC++;
 		r.PC &= 0xFFFF;
-		cbMap(i);
+		if(PROFILE) {
+			profiler.cb = i;
+		}
+		if(TABLE_DISPATCH) {
+			cbOps[i].exec();
+		} else {
+			cbMap(0xCB00 | i);
+		}
 	}
 
 	public void XX() {
@@ -4638,6 +4906,7 @@ public class Z80 {
 			break;
 		case 0xFF:
 			RST38();
+			break;
 		default:
 			XX();
 			break;
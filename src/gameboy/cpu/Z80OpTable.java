@@ -0,0 +1,600 @@
+package gameboy.cpu;
+
+/**
+ * precomputed opcode dispatch tables, one handler per opcode
+ * 
+ * mirrors the opMap / cbMap switches in Z80 so either path can be selected at startup
+ */
+public class Z80OpTable {
+
+	private Z80OpTable() {
+		
+	}
+
+	public static Opcode[] ops(final Z80 z) {
+		Opcode[] ops = new Opcode[256];
+
+		// 00
+		ops[0x00] = z::NOP;
+		ops[0x01] = z::LDBCnn;
+		ops[0x02] = z::LDBCmA;
+		ops[0x03] = z::INCBC;
+		ops[0x04] = z::INCr_b;
+		ops[0x05] = z::DECr_b;
+		ops[0x06] = z::LDrn_b;
+		ops[0x07] = z::RLCA;
+		ops[0x08] = z::LDmmSP;
+		ops[0x09] = z::ADDHLBC;
+		ops[0x0A] = z::LDABCm;
+		ops[0x0B] = z::DECBC;
+		ops[0x0C] = z::INCr_c;
+		ops[0x0D] = z::DECr_c;
+		ops[0x0E] = z::LDrn_c;
+		ops[0x0F] = z::RRCA;
+
+		// 10
+		ops[0x10] = z::DJNZn;
+		ops[0x11] = z::LDDEnn;
+		ops[0x12] = z::LDDEmA;
+		ops[0x13] = z::INCDE;
+		ops[0x14] = z::INCr_d;
+		ops[0x15] = z::DECr_d;
+		ops[0x16] = z::LDrn_d;
+		ops[0x17] = z::RLA;
+		ops[0x18] = z::JRn;
+		ops[0x19] = z::ADDHLDE;
+		ops[0x1A] = z::LDADEm;
+		ops[0x1B] = z::DECDE;
+		ops[0x1C] = z::INCr_e;
+		ops[0x1D] = z::DECr_e;
+		ops[0x1E] = z::LDrn_e;
+		ops[0x1F] = z::RRA;
+
+		// 20
+		ops[0x20] = z::JRNZn;
+		ops[0x21] = z::LDHLnn;
+		ops[0x22] = z::LDHLIA;
+		ops[0x23] = z::INCHL;
+		ops[0x24] = z::INCr_h;
+		ops[0x25] = z::DECr_h;
+		ops[0x26] = z::LDrn_h;
+		ops[0x27] = z::XX;
+		ops[0x28] = z::JRZn;
+		ops[0x29] = z::ADDHLHL;
+		ops[0x2A] = z::LDAHLI;
+		ops[0x2B] = z::DECHL;
+		ops[0x2C] = z::INCr_l;
+		ops[0x2D] = z::DECr_l;
+		ops[0x2E] = z::LDrn_l;
+		ops[0x2F] = z::CPL;
+
+		// 30
+		ops[0x30] = z::JRNCn;
+		ops[0x31] = z::LDSPnn;
+		ops[0x32] = z::LDHLDA;
+		ops[0x33] = z::INCSP;
+		ops[0x34] = z::INCHLm;
+		ops[0x35] = z::DECHLm;
+		ops[0x36] = z::LDHLmn;
+		ops[0x37] = z::SCF;
+		ops[0x38] = z::JRCn;
+		ops[0x39] = z::ADDHLSP;
+		ops[0x3A] = z::LDAHLD;
+		ops[0x3B] = z::DECSP;
+		ops[0x3C] = z::INCr_a;
+		ops[0x3D] = z::DECr_a;
+		ops[0x3E] = z::LDrn_a;
+		ops[0x3F] = z::CCF;
+
+		// 40
+		ops[0x40] = z::LDrr_bb;
+		ops[0x41] = z::LDrr_bc;
+		ops[0x42] = z::LDrr_bd;
+		ops[0x43] = z::LDrr_be;
+		ops[0x44] = z::LDrr_bh;
+		ops[0x45] = z::LDrr_bl;
+		ops[0x46] = z::LDrHLm_b;
+		ops[0x47] = z::LDrr_ba;
+		ops[0x48] = z::LDrr_cb;
+		ops[0x49] = z::LDrr_cc;
+		ops[0x4A] = z::LDrr_cd;
+		ops[0x4B] = z::LDrr_ce;
+		ops[0x4C] = z::LDrr_ch;
+		ops[0x4D] = z::LDrr_cl;
+		ops[0x4E] = z::LDrHLm_c;
+		ops[0x4F] = z::LDrr_ca;
+
+		// 50
+		ops[0x50] = z::LDrr_db;
+		ops[0x51] = z::LDrr_dc;
+		ops[0x52] = z::LDrr_dd;
+		ops[0x53] = z::LDrr_de;
+		ops[0x54] = z::LDrr_dh;
+		ops[0x55] = z::LDrr_dl;
+		ops[0x56] = z::LDrHLm_d;
+		ops[0x57] = z::LDrr_da;
+		ops[0x58] = z::LDrr_eb;
+		ops[0x59] = z::LDrr_ec;
+		ops[0x5A] = z::LDrr_ed;
+		ops[0x5B] = z::LDrr_ee;
+		ops[0x5C] = z::LDrr_eh;
+		ops[0x5D] = z::LDrr_el;
+		ops[0x5E] = z::LDrHLm_e;
+		ops[0x5F] = z::LDrr_ea;
+
+		// 60
+		ops[0x60] = z::LDrr_hb;
+		ops[0x61] = z::LDrr_hc;
+		ops[0x62] = z::LDrr_hd;
+		ops[0x63] = z::LDrr_he;
+		ops[0x64] = z::LDrr_hh;
+		ops[0x65] = z::LDrr_hl;
+		ops[0x66] = z::LDrHLm_h;
+		ops[0x67] = z::LDrr_ha;
+		ops[0x68] = z::LDrr_lb;
+		ops[0x69] = z::LDrr_lc;
+		ops[0x6A] = z::LDrr_ld;
+		ops[0x6B] = z::LDrr_le;
+		ops[0x6C] = z::LDrr_lh;
+		ops[0x6D] = z::LDrr_ll;
+		ops[0x6E] = z::LDrHLm_l;
+		ops[0x6F] = z::LDrr_la;
+
+		// 70
+		ops[0x70] = z::LDHLmr_b;
+		ops[0x71] = z::LDHLmr_c;
+		ops[0x72] = z::LDHLmr_d;
+		ops[0x73] = z::LDHLmr_e;
+		ops[0x74] = z::LDHLmr_h;
+		ops[0x75] = z::LDHLmr_l;
+		ops[0x76] = z::HALT;
+		ops[0x77] = z::LDHLmr_a;
+		ops[0x78] = z::LDrr_ab;
+		ops[0x79] = z::LDrr_ac;
+		ops[0x7A] = z::LDrr_ad;
+		ops[0x7B] = z::LDrr_ae;
+		ops[0x7C] = z::LDrr_ah;
+		ops[0x7D] = z::LDrr_al;
+		ops[0x7E] = z::LDrHLm_a;
+		ops[0x7F] = z::LDrr_aa;
+
+		// 80
+		ops[0x80] = z::ADDr_b;
+		ops[0x81] = z::ADDr_c;
+		ops[0x82] = z::ADDr_d;
+		ops[0x83] = z::ADDr_e;
+		ops[0x84] = z::ADDr_h;
+		ops[0x85] = z::ADDr_l;
+		ops[0x86] = z::ADDHL;
+		ops[0x87] = z::ADDr_a;
+		ops[0x88] = z::ADCr_b;
+		ops[0x89] = z::ADCr_c;
+		ops[0x8A] = z::ADCr_d;
+		ops[0x8B] = z::ADCr_e;
+		ops[0x8C] = z::ADCr_h;
+		ops[0x8D] = z::ADCr_l;
+		ops[0x8E] = z::ADCHL;
+		ops[0x8F] = z::ADCr_a;
+
+		// 90
+		ops[0x90] = z::SUBr_b;
+		ops[0x91] = z::SUBr_c;
+		ops[0x92] = z::SUBr_d;
+		ops[0x93] = z::SUBr_e;
+		ops[0x94] = z::SUBr_h;
+		ops[0x95] = z::SUBr_l;
+		ops[0x96] = z::SUBHL;
+		ops[0x97] = z::SUBr_a;
+		ops[0x98] = z::SBCr_b;
+		ops[0x99] = z::SBCr_c;
+		ops[0x9A] = z::SBCr_d;
+		ops[0x9B] = z::SBCr_e;
+		ops[0x9C] = z::SBCr_h;
+		ops[0x9D] = z::SBCr_l;
+		ops[0x9E] = z::SBCHL;
+		ops[0x9F] = z::SBCr_a;
+
+		// A0
+		ops[0xA0] = z::ANDr_b;
+		ops[0xA1] = z::ANDr_c;
+		ops[0xA2] = z::ANDr_d;
+		ops[0xA3] = z::ANDr_e;
+		ops[0xA4] = z::ANDr_h;
+		ops[0xA5] = z::ANDr_l;
+		ops[0xA6] = z::ANDHL;
+		ops[0xA7] = z::ANDr_a;
+		ops[0xA8] = z::XORr_b;
+		ops[0xA9] = z::XORr_c;
+		ops[0xAA] = z::XORr_d;
+		ops[0xAB] = z::XORr_e;
+		ops[0xAC] = z::XORr_h;
+		ops[0xAD] = z::XORr_l;
+		ops[0xAE] = z::XORHL;
+		ops[0xAF] = z::XORr_a;
+
+		// B0
+		ops[0xB0] = z::ORr_b;
+		ops[0xB1] = z::ORr_c;
+		ops[0xB2] = z::ORr_d;
+		ops[0xB3] = z::ORr_e;
+		ops[0xB4] = z::ORr_h;
+		ops[0xB5] = z::ORr_l;
+		ops[0xB6] = z::ORHL;
+		ops[0xB7] = z::ORr_a;
+		ops[0xB8] = z::CPr_b;
+		ops[0xB9] = z::CPr_c;
+		ops[0xBA] = z::CPr_d;
+		ops[0xBB] = z::CPr_e;
+		ops[0xBC] = z::CPr_h;
+		ops[0xBD] = z::CPr_l;
+		ops[0xBE] = z::CPHL;
+		ops[0xBF] = z::CPr_a;
+
+		// C0
+		ops[0xC0] = z::RETNZ;
+		ops[0xC1] = z::POPBC;
+		ops[0xC2] = z::JPNZnn;
+		ops[0xC3] = z::JPnn;
+		ops[0xC4] = z::CALLNZnn;
+		ops[0xC5] = z::PUSHBC;
+		ops[0xC6] = z::ADDn;
+		ops[0xC7] = z::RST00;
+		ops[0xC8] = z::RETZ;
+		ops[0xC9] = z::RET;
+		ops[0xCA] = z::JPZnn;
+		ops[0xCB] = z::MAPcb;
+		ops[0xCC] = z::CALLZnn;
+		ops[0xCD] = z::CALLnn;
+		ops[0xCE] = z::ADCn;
+		ops[0xCF] = z::RST08;
+
+		// D0
+		ops[0xD0] = z::RETNC;
+		ops[0xD1] = z::POPDE;
+		ops[0xD2] = z::JPNCnn;
+		ops[0xD3] = z::XX;
+		ops[0xD4] = z::CALLNCnn;
+		ops[0xD5] = z::PUSHDE;
+		ops[0xD6] = z::SUBn;
+		ops[0xD7] = z::RST10;
+		ops[0xD8] = z::RETC;
+		ops[0xD9] = z::RETI;
+		ops[0xDA] = z::JPCnn;
+		ops[0xDB] = z::XX;
+		ops[0xDC] = z::CALLCnn;
+		ops[0xDD] = z::XX;
+		ops[0xDE] = z::SBCn;
+		ops[0xDF] = z::RST18;
+
+		// E0
+		ops[0xE0] = z::LDIOnA;
+		ops[0xE1] = z::POPHL;
+		ops[0xE2] = z::LDIOCA;
+		ops[0xE3] = z::XX;
+		ops[0xE4] = z::XX;
+		ops[0xE5] = z::PUSHHL;
+		ops[0xE6] = z::ANDn;
+		ops[0xE7] = z::RST20;
+		ops[0xE8] = z::ADDSPn;
+		ops[0xE9] = z::JPHL;
+		ops[0xEA] = z::LDmmA;
+		ops[0xEB] = z::XX;
+		ops[0xEC] = z::XX;
+		ops[0xED] = z::XX;
+		ops[0xEE] = z::ORn;
+		ops[0xEF] = z::RST28;
+
+		// F0
+		ops[0xF0] = z::LDAIOn;
+		ops[0xF1] = z::POPAF;
+		ops[0xF2] = z::LDAIOC;
+		ops[0xF3] = z::DI;
+		ops[0xF4] = z::XX;
+		ops[0xF5] = z::PUSHAF;
+		ops[0xF6] = z::XORn;
+		ops[0xF7] = z::RST30;
+		ops[0xF8] = z::LDHLSPn;
+		ops[0xF9] = z::XX;
+		ops[0xFA] = z::LDAmm;
+		ops[0xFB] = z::EI;
+		ops[0xFC] = z::XX;
+		ops[0xFD] = z::XX;
+		ops[0xFE] = z::CPn;
+		ops[0xFF] = z::RST38;
+		return ops;
+	}
+
+	public static Opcode[] cbOps(final Z80 z) {
+		Opcode[] ops = new Opcode[256];
+
+		// CB00
+		ops[0x00] = z::RLCr_b;
+		ops[0x01] = z::RLCr_c;
+		ops[0x02] = z::RLCr_d;
+		ops[0x03] = z::RLCr_e;
+		ops[0x04] = z::RLCr_h;
+		ops[0x05] = z::RLCr_l;
+		ops[0x06] = z::RLCHL;
+		ops[0x07] = z::RLCr_a;
+		ops[0x08] = z::RRCr_b;
+		ops[0x09] = z::RRCr_c;
+		ops[0x0A] = z::RRCr_d;
+		ops[0x0B] = z::RRCr_e;
+		ops[0x0C] = z::RRCr_h;
+		ops[0x0D] = z::RRCr_l;
+		ops[0x0E] = z::RRCHL;
+		ops[0x0F] = z::RRCr_a;
+
+		// CB10
+		ops[0x10] = z::RLr_b;
+		ops[0x11] = z::RLr_c;
+		ops[0x12] = z::RLr_d;
+		ops[0x13] = z::RLr_e;
+		ops[0x14] = z::RLr_h;
+		ops[0x15] = z::RLr_l;
+		ops[0x16] = z::RLHL;
+		ops[0x17] = z::RLr_a;
+		ops[0x18] = z::RRr_b;
+		ops[0x19] = z::RRr_c;
+		ops[0x1A] = z::RRr_d;
+		ops[0x1B] = z::RRr_e;
+		ops[0x1C] = z::RRr_h;
+		ops[0x1D] = z::RRr_l;
+		ops[0x1E] = z::RRHL;
+		ops[0x1F] = z::RRr_a;
+
+		// CB20
+		ops[0x20] = z::SLAr_b;
+		ops[0x21] = z::SLAr_c;
+		ops[0x22] = z::SLAr_d;
+		ops[0x23] = z::SLAr_e;
+		ops[0x24] = z::SLAr_h;
+		ops[0x25] = z::SLAr_l;
+		ops[0x26] = z::XX;
+		ops[0x27] = z::SLAr_a;
+		ops[0x28] = z::SRAr_b;
+		ops[0x29] = z::SRAr_c;
+		ops[0x2A] = z::SRAr_d;
+		ops[0x2B] = z::SRAr_e;
+		ops[0x2C] = z::SRAr_h;
+		ops[0x2D] = z::SRAr_l;
+		ops[0x2E] = z::XX;
+		ops[0x2F] = z::SRAr_a;
+
+		// CB30
+		ops[0x30] = z::SWAPr_b;
+		ops[0x31] = z::SWAPr_c;
+		ops[0x32] = z::SWAPr_d;
+		ops[0x33] = z::SWAPr_e;
+		ops[0x34] = z::SWAPr_h;
+		ops[0x35] = z::SWAPr_l;
+		ops[0x36] = z::XX;
+		ops[0x37] = z::SWAPr_a;
+		ops[0x38] = z::SRLr_b;
+		ops[0x39] = z::SRLr_c;
+		ops[0x3A] = z::SRLr_d;
+		ops[0x3B] = z::SRLr_e;
+		ops[0x3C] = z::SRLr_h;
+		ops[0x3D] = z::SRLr_l;
+		ops[0x3E] = z::XX;
+		ops[0x3F] = z::SRLr_a;
+
+		// CB40
+		ops[0x40] = z::BIT0b;
+		ops[0x41] = z::BIT0c;
+		ops[0x42] = z::BIT0d;
+		ops[0x43] = z::BIT0e;
+		ops[0x44] = z::BIT0h;
+		ops[0x45] = z::BIT0l;
+		ops[0x46] = z::BIT0m;
+		ops[0x47] = z::BIT0a;
+		ops[0x48] = z::BIT1b;
+		ops[0x49] = z::BIT1c;
+		ops[0x4A] = z::BIT1d;
+		ops[0x4B] = z::BIT1e;
+		ops[0x4C] = z::BIT1h;
+		ops[0x4D] = z::BIT1l;
+		ops[0x4E] = z::BIT1m;
+		ops[0x4F] = z::BIT1a;
+
+		// CB50
+		ops[0x50] = z::BIT2b;
+		ops[0x51] = z::BIT2c;
+		ops[0x52] = z::BIT2d;
+		ops[0x53] = z::BIT2e;
+		ops[0x54] = z::BIT2h;
+		ops[0x55] = z::BIT2l;
+		ops[0x56] = z::BIT2m;
+		ops[0x57] = z::BIT2a;
+		ops[0x58] = z::BIT3b;
+		ops[0x59] = z::BIT3c;
+		ops[0x5A] = z::BIT3d;
+		ops[0x5B] = z::BIT3e;
+		ops[0x5C] = z::BIT3h;
+		ops[0x5D] = z::BIT3l;
+		ops[0x5E] = z::BIT3m;
+		ops[0x5F] = z::BIT3a;
+
+		// CB60
+		ops[0x60] = z::BIT4b;
+		ops[0x61] = z::BIT4c;
+		ops[0x62] = z::BIT4d;
+		ops[0x63] = z::BIT4e;
+		ops[0x64] = z::BIT4h;
+		ops[0x65] = z::BIT4l;
+		ops[0x66] = z::BIT4m;
+		ops[0x67] = z::BIT4a;
+		ops[0x68] = z::BIT5b;
+		ops[0x69] = z::BIT5c;
+		ops[0x6A] = z::BIT5d;
+		ops[0x6B] = z::BIT5e;
+		ops[0x6C] = z::BIT5h;
+		ops[0x6D] = z::BIT5l;
+		ops[0x6E] = z::BIT5m;
+		ops[0x6F] = z::BIT5a;
+
+		// CB70
+		ops[0x70] = z::BIT6b;
+		ops[0x71] = z::BIT6c;
+		ops[0x72] = z::BIT6d;
+		ops[0x73] = z::BIT6e;
+		ops[0x74] = z::BIT6h;
+		ops[0x75] = z::BIT6l;
+		ops[0x76] = z::BIT6m;
+		ops[0x77] = z::BIT6a;
+		ops[0x78] = z::BIT7b;
+		ops[0x79] = z::BIT7c;
+		ops[0x7A] = z::BIT7d;
+		ops[0x7B] = z::BIT7e;
+		ops[0x7C] = z::BIT7h;
+		ops[0x7D] = z::BIT7l;
+		ops[0x7E] = z::BIT7m;
+		ops[0x7F] = z::BIT7a;
+
+		// CB80
+		ops[0x80] = z::XX;
+		ops[0x81] = z::XX;
+		ops[0x82] = z::XX;
+		ops[0x83] = z::XX;
+		ops[0x84] = z::XX;
+		ops[0x85] = z::XX;
+		ops[0x86] = z::XX;
+		ops[0x87] = z::XX;
+		ops[0x88] = z::XX;
+		ops[0x89] = z::XX;
+		ops[0x8A] = z::XX;
+		ops[0x8B] = z::XX;
+		ops[0x8C] = z::XX;
+		ops[0x8D] = z::XX;
+		ops[0x8E] = z::XX;
+		ops[0x8F] = z::XX;
+
+		// CB90
+		ops[0x90] = z::XX;
+		ops[0x91] = z::XX;
+		ops[0x92] = z::XX;
+		ops[0x93] = z::XX;
+		ops[0x94] = z::XX;
+		ops[0x95] = z::XX;
+		ops[0x96] = z::XX;
+		ops[0x97] = z::XX;
+		ops[0x98] = z::XX;
+		ops[0x99] = z::XX;
+		ops[0x9A] = z::XX;
+		ops[0x9B] = z::XX;
+		ops[0x9C] = z::XX;
+		ops[0x9D] = z::XX;
+		ops[0x9E] = z::XX;
+		ops[0x9F] = z::XX;
+
+		// CBA0
+		ops[0xA0] = z::XX;
+		ops[0xA1] = z::XX;
+		ops[0xA2] = z::XX;
+		ops[0xA3] = z::XX;
+		ops[0xA4] = z::XX;
+		ops[0xA5] = z::XX;
+		ops[0xA6] = z::XX;
+		ops[0xA7] = z::XX;
+		ops[0xA8] = z::XX;
+		ops[0xA9] = z::XX;
+		ops[0xAA] = z::XX;
+		ops[0xAB] = z::XX;
+		ops[0xAC] = z::XX;
+		ops[0xAD] = z::XX;
+		ops[0xAE] = z::XX;
+		ops[0xAF] = z::XX;
+
+		// CBB0
+		ops[0xB0] = z::XX;
+		ops[0xB1] = z::XX;
+		ops[0xB2] = z::XX;
+		ops[0xB3] = z::XX;
+		ops[0xB4] = z::XX;
+		ops[0xB5] = z::XX;
+		ops[0xB6] = z::XX;
+		ops[0xB7] = z::XX;
+		ops[0xB8] = z::XX;
+		ops[0xB9] = z::XX;
+		ops[0xBA] = z::XX;
+		ops[0xBB] = z::XX;
+		ops[0xBC] = z::XX;
+		ops[0xBD] = z::XX;
+		ops[0xBE] = z::XX;
+		ops[0xBF] = z::XX;
+
+		// CBC0
+		ops[0xC0] = z::XX;
+		ops[0xC1] = z::XX;
+		ops[0xC2] = z::XX;
+		ops[0xC3] = z::XX;
+		ops[0xC4] = z::XX;
+		ops[0xC5] = z::XX;
+		ops[0xC6] = z::XX;
+		ops[0xC7] = z::XX;
+		ops[0xC8] = z::XX;
+		ops[0xC9] = z::XX;
+		ops[0xCA] = z::XX;
+		ops[0xCB] = z::XX;
+		ops[0xCC] = z::XX;
+		ops[0xCD] = z::XX;
+		ops[0xCE] = z::XX;
+		ops[0xCF] = z::XX;
+
+		// CBD0
+		ops[0xD0] = z::XX;
+		ops[0xD1] = z::XX;
+		ops[0xD2] = z::XX;
+		ops[0xD3] = z::XX;
+		ops[0xD4] = z::XX;
+		ops[0xD5] = z::XX;
+		ops[0xD6] = z::XX;
+		ops[0xD7] = z::XX;
+		ops[0xD8] = z::XX;
+		ops[0xD9] = z::XX;
+		ops[0xDA] = z::XX;
+		ops[0xDB] = z::XX;
+		ops[0xDC] = z::XX;
+		ops[0xDD] = z::XX;
+		ops[0xDE] = z::XX;
+		ops[0xDF] = z::XX;
+
+		// CBE0
+		ops[0xE0] = z::XX;
+		ops[0xE1] = z::XX;
+		ops[0xE2] = z::XX;
+		ops[0xE3] = z::XX;
+		ops[0xE4] = z::XX;
+		ops[0xE5] = z::XX;
+		ops[0xE6] = z::XX;
+		ops[0xE7] = z::XX;
+		ops[0xE8] = z::XX;
+		ops[0xE9] = z::XX;
+		ops[0xEA] = z::XX;
+		ops[0xEB] = z::XX;
+		ops[0xEC] = z::XX;
+		ops[0xED] = z::XX;
+		ops[0xEE] = z::XX;
+		ops[0xEF] = z::XX;
+
+		// CBF0
+		ops[0xF0] = z::XX;
+		ops[0xF1] = z::XX;
+		ops[0xF2] = z::XX;
+		ops[0xF3] = z::XX;
+		ops[0xF4] = z::XX;
+		ops[0xF5] = z::XX;
+		ops[0xF6] = z::XX;
+		ops[0xF7] = z::XX;
+		ops[0xF8] = z::XX;
+		ops[0xF9] = z::XX;
+		ops[0xFA] = z::XX;
+		ops[0xFB] = z::XX;
+		ops[0xFC] = z::XX;
+		ops[0xFD] = z::XX;
+		ops[0xFE] = z::XX;
+		ops[0xFF] = z::XX;
+		return ops;
+	}
+
+}
@@ -1,5 +1,7 @@
 package gameboy.cpu;
 
+import java.nio.ByteBuffer;
+
 /**
  * Registers
  */
@@ -23,7 +25,7 @@ public class Z80Registers {
 	
 
 	/**
-	 * Flag register, 8-bit
+	 * Flag register, 8-bit, may be stale while Z80.LAZY_FLAGS is on until Z80.flags() is called
 	 */
 	public int F;
 
@@ -76,5 +78,51 @@ public class Z80Registers {
 		
 		IME = 1;
 	}
+	
+	public void copy(Z80Registers other) {
+		A = other.A;
+		B = other.B;
+		C = other.C;
+		D = other.D;
+		E = other.E;
+		H = other.H;
+		L = other.L;
+		F = other.F;
+		SP = other.SP;
+		PC = other.PC;
+		I = other.I;
+		R = other.R;
+		IME = other.IME;
+		M = other.M;
+		T = other.T;
+	}
+	
+	/**
+	 * registers are written as full ints, several instructions leave them unmasked
+	 */
+	public void saveState(ByteBuffer out) {
+		out.putInt(A).putInt(B).putInt(C).putInt(D);
+		out.putInt(E).putInt(H).putInt(L).putInt(F);
+		out.putInt(SP).putInt(PC).putInt(I).putInt(R).putInt(IME);
+		out.putLong(M).putLong(T);
+	}
+	
+	public void loadState(ByteBuffer in) {
+		A = in.getInt();
+		B = in.getInt();
+		C = in.getInt();
+		D = in.getInt();
+		E = in.getInt();
+		H = in.getInt();
+		L = in.getInt();
+		F = in.getInt();
+		SP = in.getInt();
+		PC = in.getInt();
+		I = in.getInt();
+		R = in.getInt();
+		IME = in.getInt();
+		M = in.getLong();
+		T = in.getLong();
+	}
 
 }
@@ -0,0 +1,113 @@
+package gameboy.file;
+
+import gameboy.GameBoy;
+import gameboy.mmu.AbstractMemoryBank;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * battery backed cartridge ram kept in a memory-mapped .sav file
+ *
+ * the ram itself stays in the bank's pages so writes keep the MMU fast path and nothing is
+ * done per write. every FLUSH_CYCLES the pages that differ from the file are copied into the
+ * mapping, which only dirties the page cache, and the OS writes them back in its own time.
+ * close() flushes and forces the mapping to disk. flush() reads the ram pages, so it only runs on
+ * the emulation thread, the shutdown hook only forces what the last flush copied, so an exit
+ * without close() loses at most FLUSH_CYCLES of writes.
+ */
+public class BatterySave {
+
+	/**
+	 * about one second of emulated time between copies into the mapping
+	 */
+	public static final long FLUSH_CYCLES = GameBoy.CYCLES_PER_FRAME * 60L;
+
+	private AbstractMemoryBank ram;
+
+	private MappedByteBuffer file;
+
+	private byte[] filePage;
+
+	private Thread shutdownHook;
+
+	/**
+	 * map fileName, creating it if needed, and load the ram from it
+	 */
+	public BatterySave(AbstractMemoryBank ram, String fileName) throws IOException {
+		this.ram = ram;
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			// maps past the end grow the file, anything after the ram (e.g. a clock) is left alone
+			file = channel.map(FileChannel.MapMode.READ_WRITE, 0, ram.size());
+		}
+		filePage = new byte[AbstractMemoryBank.PAGE_SIZE];
+		for(int offset = 0, i = 0; offset < ram.size(); offset += AbstractMemoryBank.PAGE_SIZE, i++) {
+			file.get(offset, ram.writablePage(i));
+		}
+		shutdownHook = new Thread(file::force, "battery");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * copy the ram pages that changed since the last flush into the mapping
+	 */
+	public void flush() {
+		for(int offset = 0, i = 0; offset < ram.size(); offset += AbstractMemoryBank.PAGE_SIZE, i++) {
+			byte[] page = ram.page(i);
+			file.get(offset, filePage, 0, page.length);
+			if(!Arrays.equals(page, 0, page.length, filePage, 0, page.length)) {
+				file.put(offset, page);
+			}
+		}
+	}
+
+	/**
+	 * flush and write the mapping back to disk
+	 */
+	public void force() {
+		flush();
+		file.force();
+	}
+
+	public void close() {
+		force();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// closed while the jvm shuts down, the hook is running or about to and only forces again
+		}
+	}
+
+	/**
+	 * cartridge types (header 0147) with a battery
+	 */
+	public static boolean hasBattery(int cartType) {
+		switch(cartType) {
+			case 0x03:
+			case 0x06:
+			case 0x09:
+			case 0x0D:
+			case 0x0F:
+			case 0x10:
+			case 0x13:
+			case 0x1B:
+			case 0x1E:
+			case 0xFF:
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * the .sav next to a rom, pokemon_red.gb saves to pokemon_red.sav
+	 */
+	public static String fileName(String romFileName) {
+		return romFileName.replaceFirst("\\.[^./\\\\]*$", "") + ".sav";
+	}
+
+}
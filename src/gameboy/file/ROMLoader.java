@@ -3,6 +3,11 @@ package gameboy.file;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class ROMLoader {
 
@@ -10,13 +15,32 @@ public class ROMLoader {
 		File f = new File(fileName);
 		byte[] b = new byte[(int) f.length()];
 
-		try {
-			FileInputStream fis = new FileInputStream(f);
-			fis.read(b);
+		try (FileInputStream fis = new FileInputStream(f)) {
+			// read can return early, keep going until the whole file is in
+			int read = 0;
+			while (read < b.length) {
+				int n = fis.read(b, read, b.length - read);
+				if (n < 0) {
+					break;
+				}
+				read += n;
+			}
 			return b;
+		} catch (FileNotFoundException e) {
+			throw e;
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
+	/**
+	 * map the file read-only, the contents are paged in by the OS on first access and never
+	 * copied onto the heap. the mapping stays valid after the channel is closed
+	 */
+	public ByteBuffer map(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
 }
@@ -0,0 +1,301 @@
+package gameboy.file;
+
+import gameboy.GameBoy;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * rewind history of the last few seconds, one save state per frame
+ *
+ * every KEYFRAME_INTERVAL frames a full snapshot is kept, the frames in between are stored as
+ * the XOR against their keyframe, run length encoded so the unchanged memory pages cost almost
+ * nothing. entries live in a fixed byte arena used as a ring, the oldest keyframe group is
+ * dropped once the arena or the frame limit is full, so memory never grows past the arena.
+ *
+ * delta format: repeated (unchanged byte count, changed byte count, changed bytes XOR keyframe),
+ * counts as 7 bit varints.
+ */
+public class RewindBuffer {
+
+	public static final int FRAMES_PER_SECOND = 60;
+
+	public static final int KEYFRAME_INTERVAL = 60;
+
+	/**
+	 * arena bytes per second of history, a keyframe plus typical deltas
+	 */
+	public static final int BYTES_PER_SECOND = 256 * 1024;
+
+	private GameBoy gb;
+
+	private int keyframeInterval;
+
+	private byte[] arena;
+
+	/**
+	 * arena offset the next entry is written at
+	 */
+	private int head;
+
+	// one index entry per captured frame, oldest at first
+	private long[] frameNumbers;
+
+	private int[] offsets;
+
+	private int[] lengths;
+
+	private boolean[] keyframes;
+
+	private int first;
+
+	private int count;
+
+	private ByteBuffer snapshot;
+
+	/**
+	 * the keyframe new deltas are taken against
+	 */
+	private byte[] base;
+
+	private int baseLength;
+
+	private long baseFrame;
+
+	private byte[] delta;
+
+	public RewindBuffer(GameBoy gb, int seconds) {
+		this(gb, seconds * FRAMES_PER_SECOND, KEYFRAME_INTERVAL, seconds * BYTES_PER_SECOND);
+	}
+
+	public RewindBuffer(GameBoy gb, int maxFrames, int keyframeInterval, int arenaBytes) {
+		this.gb = gb;
+		this.keyframeInterval = keyframeInterval;
+		arena = new byte[arenaBytes];
+		frameNumbers = new long[maxFrames];
+		offsets = new int[maxFrames];
+		lengths = new int[maxFrames];
+		keyframes = new boolean[maxFrames];
+		snapshot = SaveState.allocate();
+		base = new byte[SaveState.CAPACITY];
+		// worst case for alternating changed and unchanged bytes
+		delta = new byte[SaveState.CAPACITY * 2 + 16];
+		clear();
+	}
+
+	public void clear() {
+		head = 0;
+		first = 0;
+		count = 0;
+		baseLength = 0;
+		baseFrame = -1;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * oldest frame that can be restored, -1 if empty
+	 */
+	public long oldestFrame() {
+		return (count == 0) ? -1 : frameNumbers[first];
+	}
+
+	public long newestFrame() {
+		return (count == 0) ? -1 : frameNumbers[index(count - 1)];
+	}
+
+	/**
+	 * arena bytes held by the current entries
+	 */
+	public long bytesUsed() {
+		long used = 0;
+		for (int i = 0; i < count; i++) {
+			used += lengths[index(i)];
+		}
+		return used;
+	}
+
+	/**
+	 * record the current machine state under gb.frames, once per frame
+	 */
+	public void capture() {
+		SaveState.save(gb, snapshot);
+		byte[] state = snapshot.array();
+		int length = snapshot.remaining();
+		if (count == frameNumbers.length) {
+			evictOldest();
+		}
+		boolean key = !hasBase() || length != baseLength || gb.frames - baseFrame >= keyframeInterval;
+		if (!key) {
+			int n = encode(state, base, length, delta);
+			// a delta needs its keyframe to survive making room for it
+			if (n < length && reserve(n) && hasBase()) {
+				append(delta, n, false);
+				return;
+			}
+		}
+		if (!reserve(length)) {
+			throw new IllegalStateException("rewind arena smaller than a save state");
+		}
+		System.arraycopy(state, 0, base, 0, length);
+		baseLength = length;
+		baseFrame = gb.frames;
+		append(state, length, true);
+	}
+
+	/**
+	 * restore the state captured at frame and forget every later frame
+	 * @return false if the frame is not in the buffer
+	 */
+	public boolean rewind(long frame) {
+		if (count == 0 || frame < oldestFrame() || frame > newestFrame()) {
+			return false;
+		}
+		int i = (int) (frame - oldestFrame());
+		if (frameNumbers[index(i)] != frame) {
+			return false;
+		}
+		int k = i;
+		while (!keyframes[index(k)]) {
+			k--;
+		}
+		int key = index(k);
+		System.arraycopy(arena, offsets[key], base, 0, lengths[key]);
+		baseLength = lengths[key];
+		baseFrame = frameNumbers[key];
+		int entry = index(i);
+		byte[] state = snapshot.array();
+		System.arraycopy(base, 0, state, 0, baseLength);
+		if (!keyframes[entry]) {
+			decode(arena, offsets[entry], lengths[entry], state);
+		}
+		SaveState.load(gb, ByteBuffer.wrap(state, 0, baseLength));
+		count = i + 1;
+		head = offsets[entry] + lengths[entry];
+		return true;
+	}
+
+	/**
+	 * rewind by frames, clamped to the oldest frame held
+	 */
+	public boolean rewindFrames(int frames) {
+		return rewind(Math.max(oldestFrame(), newestFrame() - frames));
+	}
+
+	private boolean hasBase() {
+		return count > 0 && baseFrame >= oldestFrame();
+	}
+
+	private int index(int i) {
+		return (first + i) % frameNumbers.length;
+	}
+
+	/**
+	 * evict entries until n bytes fit at head, wrapping to the start of the arena if needed
+	 * @return false if n is larger than the arena
+	 */
+	private boolean reserve(int n) {
+		if (n > arena.length) {
+			return false;
+		}
+		if (head + n > arena.length) {
+			// the tail past head holds the oldest entries
+			while (count > 0 && offsets[first] >= head) {
+				evictOldest();
+			}
+			head = 0;
+		}
+		// the entries right after head are always the oldest
+		while (count > 0 && offsets[first] < head + n && offsets[first] + lengths[first] > head) {
+			evictOldest();
+		}
+		return true;
+	}
+
+	private void evictOldest() {
+		first = index(1);
+		count--;
+		// deltas are useless without their keyframe
+		while (count > 0 && !keyframes[first]) {
+			first = index(1);
+			count--;
+		}
+		if (count == 0) {
+			first = 0;
+		}
+	}
+
+	private void append(byte[] data, int length, boolean key) {
+		int i = index(count);
+		System.arraycopy(data, 0, arena, head, length);
+		frameNumbers[i] = gb.frames;
+		offsets[i] = head;
+		lengths[i] = length;
+		keyframes[i] = key;
+		head += length;
+		count++;
+	}
+
+	private static int encode(byte[] state, byte[] base, int length, byte[] out) {
+		int o = 0;
+		int i = 0;
+		while (i < length) {
+			// the unchanged runs are most of the state, mismatch compares them a word at a time
+			int unchanged = Arrays.mismatch(state, i, length, base, i, length);
+			if (unchanged < 0) {
+				break;
+			}
+			o = putCount(out, o, unchanged);
+			i += unchanged;
+			int changed = i;
+			while (i < length && state[i] != base[i]) {
+				i++;
+			}
+			o = putCount(out, o, i - changed);
+			for (int j = changed; j < i; j++) {
+				out[o++] = (byte) (state[j] ^ base[j]);
+			}
+		}
+		return o;
+	}
+
+	private static void decode(byte[] in, int offset, int length, byte[] state) {
+		int end = offset + length;
+		int p = offset;
+		int i = 0;
+		while (p < end) {
+			int unchanged = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = in[p++];
+				unchanged |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			int changed = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = in[p++];
+				changed |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			i += unchanged;
+			for (int j = 0; j < changed; j++) {
+				state[i++] ^= in[p++];
+			}
+		}
+	}
+
+	private static int putCount(byte[] out, int o, int value) {
+		while (value >= 0x80) {
+			out[o++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		out[o++] = (byte) value;
+		return o;
+	}
+
+}
@@ -0,0 +1,96 @@
+package gameboy.file;
+
+import gameboy.GameBoy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * versioned binary snapshot of a running machine
+ *
+ * the header holds a magic number, the format version and the cartridge header checksum, a
+ * snapshot can only be restored into a machine with the same cartridge loaded. the body is
+ * written by GameBoy.saveState, every subsystem appends its registers and memory in a fixed order.
+ */
+public class SaveState {
+
+	public static final int MAGIC = 0x47425353; // GBSS
+
+	/**
+	 * bump whenever a subsystem changes what it writes
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * large enough for all the ram banks, with the largest cartridge ram, plus the registers
+	 */
+	public static final int CAPACITY = 256 * 1024;
+
+	/**
+	 * allocate a buffer for save(), reuse it to snapshot every frame without garbage
+	 */
+	public static ByteBuffer allocate() {
+		return ByteBuffer.allocate(CAPACITY);
+	}
+
+	/**
+	 * snapshot gb into out, overwriting whatever it held
+	 * @return out, flipped for reading
+	 */
+	public static ByteBuffer save(GameBoy gb, ByteBuffer out) {
+		out.clear();
+		out.putInt(MAGIC).putInt(VERSION).putInt(cartridgeId(gb));
+		gb.saveState(out);
+		out.flip();
+		return out;
+	}
+
+	/**
+	 * restore a snapshot taken with save() into gb
+	 */
+	public static void load(GameBoy gb, ByteBuffer in) {
+		if (in.getInt() != MAGIC) {
+			throw new IllegalArgumentException("not a save state");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("unsupported save state version " + version);
+		}
+		if (in.getInt() != cartridgeId(gb)) {
+			throw new IllegalArgumentException("save state is for a different cartridge");
+		}
+		gb.loadState(in);
+	}
+
+	public static void write(GameBoy gb, String fileName) throws IOException {
+		ByteBuffer buffer = save(gb, allocate());
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	public static void read(GameBoy gb, String fileName) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+		}
+		buffer.flip();
+		load(gb, buffer);
+	}
+
+	/**
+	 * cartridge type plus the global checksum from the header (014E-014F)
+	 */
+	private static int cartridgeId(GameBoy gb) {
+		return (gb.mmu.cartType << 16) | (gb.mmu.rom.readByte(0x014E) << 8) | gb.mmu.rom.readByte(0x014F);
+	}
+
+}
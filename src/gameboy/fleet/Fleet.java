@@ -0,0 +1,89 @@
+package gameboy.fleet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * runs many headless sessions in one JVM
+ * 
+ * sessions are stepped in slices of a few frames on a fixed pool of platform threads sharing one
+ * FIFO queue, a session that has not finished re-queues itself behind every other session after
+ * each slice so no instance starves. a work-stealing pool would keep re-running the same session
+ * from the worker's local queue
+ */
+public class Fleet {
+
+	public static final int DEFAULT_FRAMES_PER_SLICE = 1;
+
+	private int threads;
+
+	private int framesPerSlice;
+
+	public Fleet() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_FRAMES_PER_SLICE);
+	}
+
+	public Fleet(int threads, int framesPerSlice) {
+		this.threads = threads;
+		this.framesPerSlice = framesPerSlice;
+	}
+
+	/**
+	 * usage: Fleet frames instances rom [rom ...]
+	 * 
+	 * runs instances sessions, cycling through the given roms, for frames frames each
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if(args.length < 3) {
+			System.err.println("usage: Fleet frames instances rom [rom ...]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		int frames = Integer.parseInt(args[0]);
+		int instances = Integer.parseInt(args[1]);
+		List<Session> sessions = new ArrayList<Session>();
+		for(int i = 0; i < instances; i++) {
+			sessions.add(new Session(args[2 + (i % (args.length - 2))], frames));
+		}
+		FleetReport report = new Fleet().run(sessions);
+		report.print(System.out);
+	}
+
+	public FleetReport run(List<Session> sessions) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CountDownLatch done = new CountDownLatch(sessions.size());
+		long start = System.nanoTime();
+		try {
+			for(Session session : sessions) {
+				schedule(pool, session, done);
+			}
+			done.await();
+		} finally {
+			pool.shutdownNow();
+		}
+		return new FleetReport(sessions, System.nanoTime() - start);
+	}
+
+	private void schedule(final ExecutorService pool, final Session session, final CountDownLatch done) {
+		pool.execute(new Runnable() {
+			public void run() {
+				boolean finished;
+				try {
+					finished = session.runSlice(framesPerSlice);
+				} catch(Throwable t) {
+					session.fail(t);
+					finished = true;
+				}
+				if(finished) {
+					done.countDown();
+				} else {
+					schedule(pool, session, done);
+				}
+			}
+		});
+	}
+
+}
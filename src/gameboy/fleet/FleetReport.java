@@ -0,0 +1,73 @@
+package gameboy.fleet;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * aggregate throughput and per-session latency of a fleet run
+ */
+public class FleetReport {
+
+	public List<Session> sessions;
+
+	public long wallNanos;
+
+	public long totalFrames;
+
+	public int failed;
+
+	/**
+	 * latencies of the sessions that finished in nanoseconds, sorted ascending
+	 */
+	public long[] latencies;
+
+	public FleetReport(List<Session> sessions, long wallNanos) {
+		this.sessions = sessions;
+		this.wallNanos = wallNanos;
+		long[] finished = new long[sessions.size()];
+		int n = 0;
+		for(Session session : sessions) {
+			totalFrames += session.framesRun();
+			if(session.error != null) {
+				failed++;
+			}
+			// failed and unfinished sessions have no latency to rank
+			if(session.finished()) {
+				finished[n++] = session.latencyNanos();
+			}
+		}
+		latencies = Arrays.copyOf(finished, n);
+		Arrays.sort(latencies);
+	}
+
+	public double framesPerSecond() {
+		return totalFrames * 1e9 / wallNanos;
+	}
+
+	/**
+	 * @param p percentile between 0 and 100
+	 */
+	public long latencyPercentile(double p) {
+		if(latencies.length == 0) {
+			return 0;
+		}
+		int i = (int) Math.ceil(p / 100.0 * latencies.length) - 1;
+		return latencies[Math.max(0, Math.min(i, latencies.length - 1))];
+	}
+
+	public void print(PrintStream out) {
+		out.println("sessions: " + sessions.size() + " (" + failed + " failed)");
+		out.println("frames: " + totalFrames + " in " + (wallNanos / 1000000) + " ms");
+		out.println("frames/sec: " + (long) framesPerSecond());
+		out.println("session latency ms: p50 " + (latencyPercentile(50) / 1000000)
+				+ ", p99 " + (latencyPercentile(99) / 1000000)
+				+ ", max " + (latencyPercentile(100) / 1000000));
+		long maxSlice = 0;
+		for(Session session : sessions) {
+			maxSlice = Math.max(maxSlice, session.maxSliceNanos);
+		}
+		out.println("longest slice ms: " + (maxSlice / 1000000));
+	}
+
+}
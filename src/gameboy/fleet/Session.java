@@ -0,0 +1,133 @@
+package gameboy.fleet;
+
+import gameboy.GameBoy;
+import gameboy.metrics.Monitor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * one headless emulator instance in a fleet, run a slice of frames at a time
+ */
+public class Session {
+
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	/**
+	 * tells apart sessions of the same rom, in the name of their Monitor
+	 */
+	public final int id = NEXT_ID.getAndIncrement();
+
+	public String romFileName;
+
+	public int frames;
+
+	/**
+	 * the running console, null before the first slice and once the session has finished or failed
+	 */
+	public GameBoy gb;
+
+	public long startNanos;
+
+	/**
+	 * set when the last frame has run, 0 while unfinished or after a failure
+	 */
+	public long endNanos;
+
+	/**
+	 * frames run when the console was released
+	 */
+	private long framesDone;
+
+	public int slices;
+
+	/**
+	 * wall time spent inside slices, excluding time spent waiting for a thread
+	 */
+	public long busyNanos;
+
+	public long maxSliceNanos;
+
+	/**
+	 * set if the session died, it is not scheduled again
+	 */
+	public Throwable error;
+
+	public Session(String romFileName, int frames) {
+		this.romFileName = romFileName;
+		this.frames = frames;
+	}
+
+	/**
+	 * create the console and load the cartridge, done lazily on the first slice. every session
+	 * is started within the first round of slices, it is releasing the console once finished
+	 * that keeps the fleet from holding machines it no longer runs
+	 */
+	private void start() {
+		gb = new GameBoy();
+		gb.loadCartridge(romFileName);
+		gb.monitor = Monitor.attach(gb, romFileName + "#" + id);
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * run up to framesPerSlice frames
+	 * @return true once all frames have been run
+	 */
+	public boolean runSlice(int framesPerSlice) {
+		if(gb == null) {
+			start();
+		}
+		long sliceStart = System.nanoTime();
+		for(int i = 0; i < framesPerSlice && gb.frames < frames; i++) {
+			gb.runFrame();
+		}
+		long now = System.nanoTime();
+		long sliceNanos = now - sliceStart;
+		slices++;
+		busyNanos += sliceNanos;
+		if(sliceNanos > maxSliceNanos) {
+			maxSliceNanos = sliceNanos;
+		}
+		if(gb.frames >= frames) {
+			endNanos = now;
+			release();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * record the error that killed the session and release its console
+	 */
+	public void fail(Throwable t) {
+		error = t;
+		release();
+	}
+
+	private void release() {
+		if(gb != null) {
+			if(gb.monitor != null) {
+				gb.monitor.stop();
+			}
+			framesDone = gb.frames;
+			gb = null;
+		}
+	}
+
+	public long framesRun() {
+		return (gb == null) ? framesDone : gb.frames;
+	}
+
+	public boolean finished() {
+		return error == null && endNanos != 0;
+	}
+
+	/**
+	 * wall time from the first slice to the last, including time queued behind other sessions
+	 * @return -1 for a session that failed or has not finished
+	 */
+	public long latencyNanos() {
+		return finished() ? endNanos - startNanos : -1;
+	}
+
+}
@@ -1,21 +1,29 @@
 package gameboy.gpu;
 
 import gameboy.GameBoy;
+import gameboy.graphics.FrameBuffer;
+import gameboy.graphics.FrameRing;
 import gameboy.graphics.Palette;
 import gameboy.graphics.PixelRGBMapper;
-import gameboy.graphics.RGB;
-import gameboy.graphics.Screen;
+import gameboy.metrics.FrameEvent;
 import gameboy.mmu.GPUVRAM;
-import gameboy.mmu.MMU;
 import gameboy.mmu.SPRITEINFORAM;
+import gameboy.timer.Scheduler;
+
+import java.nio.ByteBuffer;
+
+import jdk.jfr.EventType;
 
 public class GPU {
 	
-	private GameBoy gb = GameBoy.getInstance();
+	private GameBoy gb;
 
-	private int mode = 0;
+	/**
+	 * mode lengths in machine cycles: hblank 204, vblank line 456, OAM read 80 and VRAM read 172 clocks
+	 */
+	public static final int[] MODE_CYCLES = new int[] { 51, 114, 20, 43 };
 
-	private long modeClock = 0;
+	private int mode = 0;
 
 	private int line = 0;
 	
@@ -23,15 +31,38 @@ public class GPU {
 	
 	private int scy = 0;
 	
-	private int[][][] tilemap;
+	/**
+	 * tile data occupies 8000-97FF, 384 tiles of 16 bytes
+	 */
+	public static final int TILES = 384;
+
+	private static final int TILE_DATA_END = TILES * 16;
+
+	/**
+	 * decoded tile set, the palette index (0-3) of each pixel at tile * 64 + y * 8 + x
+	 */
+	private byte[] tiles;
+
+	/**
+	 * one bit per tile row (tile * 8 + y) written since it was last decoded
+	 */
+	private long[] dirtyRows;
+
+	private boolean tilesDirty;
 	
 	private int bgmap = 0;
 
 	private int bgtile = 0;
 	
-	private Screen screen;
+	/**
+	 * completed frames, taken by the screen's display thread when there is one
+	 */
+	public FrameRing frames;
 	
-	private PixelRGBMapper rgbMapper;
+	/**
+	 * the frame being rendered
+	 */
+	public FrameBuffer frame;
 	
 	public GPUVRAM vram;
 	
@@ -39,116 +70,216 @@ public class GPU {
 	
 	public Palette palette;
 
-	public GPU() {
+	/**
+	 * begun when the previous frame was published, null unless jfr was recording frames then
+	 */
+	private FrameEvent frameEvent;
+
+	private static final EventType FRAME_EVENTS = EventType.getEventType(FrameEvent.class);
+
+	public GPU(GameBoy gb) {
+		this.gb = gb;
 		vram = new GPUVRAM();
 		oram = new SPRITEINFORAM();
-		screen = new Screen();
-		rgbMapper = new PixelRGBMapper();
+		frames = new FrameRing();
+		frame = frames.writeBuffer();
 		palette = new Palette();
-		tilemap = new int[512][8][8];
+		tiles = new byte[TILES * 64];
+		dirtyRows = new long[TILES * 8 / 64];
 		reset();
 	}
 
+	/**
+	 * a copy of parent's gpu for a fork of its machine, sharing vram and oam pages copy-on-write.
+	 * the fork renders into its own framebuffers and decodes its own tile cache
+	 */
+	public GPU(GameBoy gb, GPU parent) {
+		this.gb = gb;
+		vram = (GPUVRAM) parent.vram.fork();
+		oram = (SPRITEINFORAM) parent.oram.fork();
+		frames = new FrameRing();
+		frame = frames.writeBuffer();
+		palette = new Palette(parent.palette);
+		tiles = new byte[TILES * 64];
+		dirtyRows = new long[TILES * 8 / 64];
+		mode = parent.mode;
+		line = parent.line;
+		scx = parent.scx;
+		scy = parent.scy;
+		bgmap = parent.bgmap;
+		bgtile = parent.bgtile;
+		invalidateTiles();
+	}
+
 	public void reset() {
+		mode = 2;
+		line = 0;
+		gb.scheduler.schedule(Scheduler.GPU, gb.z80.clock.M + MODE_CYCLES[mode]);
 		vram.reset();
 		oram.reset();
 		palette.reset();
-		for(int i = 0; i < 512; i++) {
-			for(int y = 0; y < 8; y++) {
-				for(int x = 0; x < 8; x++) {
-					tilemap[i][y][x] = 0;
-				}
-			}
-		}
+		frames.reset();
+		invalidateTiles();
+	}
+
+	public void saveState(ByteBuffer out) {
+		out.putInt(mode).putInt(line);
+		// cycles left in the current mode
+		out.putLong(gb.scheduler.deadline(Scheduler.GPU) - gb.z80.clock.M);
+		out.putInt(scx).putInt(scy).putInt(bgmap).putInt(bgtile);
+		palette.saveState(out);
+		vram.saveState(out);
+		oram.saveState(out);
+	}
+
+	public void loadState(ByteBuffer in) {
+		mode = in.getInt();
+		line = in.getInt();
+		gb.scheduler.schedule(Scheduler.GPU, gb.z80.clock.M + in.getLong());
+		scx = in.getInt();
+		scy = in.getInt();
+		bgmap = in.getInt();
+		bgtile = in.getInt();
+		palette.loadState(in);
+		vram.loadState(in);
+		oram.loadState(in);
+		invalidateTiles();
 	}
 
-	public void step() {
-		modeClock += gb.z80.r.T;
+	/**
+	 * the current mode has run for its full length, move to the next one
+	 * @param when the cycle the mode ended at
+	 * @return the cycle the next mode ends at
+	 */
+	public long event(long when) {
 		switch (mode) {
 		// OAM read mode, scanline active
 		case 2:
-			if (modeClock >= 80) {
-				modeClock = 0;
-				mode = 3;
-			}
+			mode = 3;
 			break;
 		// VRAM read mode, scanline active // Treat end of mode 3 as end of
 		// scanline
 		case 3:
-			if (modeClock >= 172) {
-
-				// Enter hblank
-				modeClock = 0;
-				mode = 0;
+			// Enter hblank
+			mode = 0;
 
-				// Write a scanline to the framebuffer
-				renderScan();
-			}
+			// Write a scanline to the framebuffer
+			renderScan();
 			break;
 		// Hblank // After the last hblank, push the screen data to canvas
 		case 0:
-			if (modeClock >= 204) {
-
-				// Enter hblank
-				modeClock = 0;
-				line++;
-				if (line == 143) {
-					// Enter vblank
-					mode = 1;
-					putImageData(screen, 0, 0);
-				} else {
-					mode = 2;
-				}
-				// Write a scanline to the framebuffer
-				renderScan();
+			line++;
+			// line 143, the last one, was drawn at the end of its mode 3
+			if (line == 144) {
+				// Enter vblank, and request its interrupt
+				mode = 1;
+				gb.mmu.IF |= 1;
+				putImageData();
+			} else {
+				mode = 2;
 			}
 			break;
 		// Vblank (10 lines)
 		case 1:
-			if (modeClock >= 456) {
-				modeClock = 0;
-				line++;
-				if (line > 153) {
-					// Restart scanning modes
-					mode = 2;
-					line = 0;
-				}
+			line++;
+			if (line > 153) {
+				// Restart scanning modes
+				mode = 2;
+				line = 0;
 			}
 			break;
 		}
+		return when + MODE_CYCLES[mode];
+	}
 
+	/**
+	 * a byte of tile data was written, mark its tile row for decoding before the next scanline
+	 */
+	public void updateTile(int address, int value) {
+		address &= 0x1FFF;
+		if (address < TILE_DATA_END) {
+			int row = address >> 1;
+			dirtyRows[row >> 6] |= 1L << (row & 63);
+			tilesDirty = true;
+		}
 	}
 
-	public void updateTile(int address, int val) {
-		// Get the "base addressess" for this tile row 
-		// TODO is this necessary?
-		address &= 0x1FFE;
-		
-		int tile = (address >> 4) & 0x1FF;
-		int y = (address >> 1) & 0xF;
-		
-		int sx;
-		for(int x = 0; x < 8; x++) {
-			// Find bit index for this pixel 
-			sx = 1 << (7-x);
-			System.out.println("tile: " + tile + " x: " + x + " y: " + y);
-			// Update tile set
-			tilemap[tile][y][x] = 
-					(((gb.mmu.readByte(address) & sx) > 0) ? 1 : 0) + 
-					(((gb.mmu.readByte(address + 1) & sx) > 0) ? 2 : 0);
+	/**
+	 * mark every tile row for decoding, for when vram was changed behind the MMU's back
+	 */
+	public void invalidateTiles() {
+		for (int i = 0; i < dirtyRows.length; i++) {
+			dirtyRows[i] = -1L;
 		}
+		tilesDirty = true;
 	}
-	
-	private void putImageData(Screen screen, int x, int y) {
 
+	/**
+	 * decode the 2bpp data of every dirty tile row into the tile cache
+	 */
+	private void updateTiles() {
+		for (int i = 0; i < dirtyRows.length; i++) {
+			long bits = dirtyRows[i];
+			while (bits != 0) {
+				decodeTileRow((i << 6) + Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+			dirtyRows[i] = 0;
+		}
+		tilesDirty = false;
+	}
+
+	/**
+	 * @param row tile * 8 + y, its two bytes are at row * 2 and its pixels at row * 8
+	 */
+	private void decodeTileRow(int row) {
+		int low = vram.readByte(row << 1);
+		int high = vram.readByte((row << 1) + 1);
+		int offset = row << 3;
+		for (int x = 0; x < 8; x++) {
+			int bit = 7 - x;
+			tiles[offset + x] = (byte) (((low >> bit) & 1) | (((high >> bit) & 1) << 1));
+		}
+	}
+	
+	/**
+	 * a frame is complete, publish it and carry on rendering into a free buffer
+	 */
+	private void putImageData() {
+		frame = frames.publish();
+		gb.metrics.framesRendered++;
+		if (frameEvent != null) {
+			frameEvent.end();
+			if (frameEvent.shouldCommit()) {
+				frameEvent.frame = gb.metrics.framesRendered;
+				frameEvent.cycles = gb.z80.clock.M;
+				frameEvent.commit();
+			}
+			frameEvent = null;
+		}
+		// nothing is allocated while frames are not recorded
+		if (FRAME_EVENTS.isEnabled()) {
+			frameEvent = new FrameEvent();
+			frameEvent.begin();
+		}
 	}
 
-	private void renderScan() {
+	/**
+	 * draw the background of the current line, package private for GPUBenchmark
+	 */
+	void renderScan() {
+		if (line >= FrameBuffer.HEIGHT) {
+			return;
+		}
+		if (tilesDirty) {
+			updateTiles();
+		}
+		
 		// VRAM offset for the tile map 
-		int mapoffs = MMU.GPU_VRAM_OFFSET + ((bgmap > 0) ? 0x1C00 : 0x1800); 
+		int mapoffs = (bgmap > 0) ? 0x1C00 : 0x1800; 
 		
-		// Which line of tiles to use in the map 
-		mapoffs += ((line + scy) & 255) >> 3; 
+		// Which line of tiles to use in the map, 32 tiles per map line 
+		mapoffs += (((line + scy) & 255) >> 3) << 5; 
 		
 		// Which tile to start with in the map line 
 		int lineoffs = (scx >> 3); 
@@ -159,39 +290,39 @@ public class GPU {
 		// Where in the tileline to start 
 		int x = scx & 7; 
 		
-		// Where to render on the canvas 
-		int canvasoffs = line * 160 * 4; 
+		// Where to render in the framebuffer 
+		int[] pixels = frame.pixels;
+		int canvasoffs = line * FrameBuffer.WIDTH; 
+		int end = canvasoffs + FrameBuffer.WIDTH;
 		
 		// Read tile index from the background map 
-		RGB color; 
-		int tile = gb.mmu.readByte(mapoffs + lineoffs); 
-		
-		// If the tile data set in use is #1, the // indices are signed; calculate a real tile offset 
-		if(bgtile == 1 && tile < 128) {
-			tile += 256; 
-			for(int i = 0; i < 160; i++) { 
-				// Re-map the tile pixel through the palette 
-				color = rgbMapper.map(tilemap[tile][y][x]); 
-				
-				// Plot the pixel to canvas 
-				// data[canvasoffs + 0] = color.red(); 
-				// data[canvasoffs + 1] = color.green();
-				// data[canvasoffs + 2] = color.blue(); 
-				// data[canvasoffs + 3] = color[4]; 
-				canvasoffs += 4; // When this tile ends, read another 
-				x++; 
-				if(x == 8) { 
-					x = 0; 
-					lineoffs = (lineoffs + 1) & 31; 
-					tile = gb.mmu.readByte(mapoffs + lineoffs); 
-					if(bgtile == 1 && tile < 128) {
-						tile += 256; 
-					}
-				}
+		int tile = tileIndex(mapoffs + lineoffs); 
+		while (canvasoffs < end) { 
+			// Re-map the tile pixel through the palette and plot it 
+			pixels[canvasoffs++] = PixelRGBMapper.SHADES[tiles[tile + (y << 3) + x]]; 
+			
+			// When this tile ends, read another 
+			x++; 
+			if (x == 8) { 
+				x = 0; 
+				lineoffs = (lineoffs + 1) & 31; 
+				tile = tileIndex(mapoffs + lineoffs); 
 			}
 		}
 	}
 
+	/**
+	 * @return offset in the tile cache of the tile referenced by a map entry
+	 */
+	private int tileIndex(int mapAddress) {
+		int tile = vram.readByte(mapAddress); 
+		// If the tile data set in use is #1, the indices are signed; calculate a real tile offset 
+		if (bgtile == 1 && tile < 128) {
+			tile += 256; 
+		}
+		return tile << 6;
+	}
+
 	public void updateORAM(int address, int value) {
 		// TODO Auto-generated method stub
 		
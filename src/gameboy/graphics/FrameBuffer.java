@@ -0,0 +1,35 @@
+package gameboy.graphics;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * 160x144 ARGB pixels backed directly by a BufferedImage raster, so the gpu writes
+ * pixels as plain ints and the screen blits the image without any conversion
+ */
+public class FrameBuffer {
+
+	public static final int WIDTH = 160;
+
+	public static final int HEIGHT = 144;
+
+	public BufferedImage image;
+
+	/**
+	 * the image's pixels, row major, y * WIDTH + x
+	 */
+	public int[] pixels;
+
+	public FrameBuffer() {
+		image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		reset();
+	}
+
+	public void reset() {
+		for(int i = 0; i < pixels.length; i++) {
+			pixels[i] = PixelRGBMapper.SHADES[0];
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package gameboy.graphics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * lock-free handoff of completed frames from the emulation thread to a display thread
+ * 
+ * three preallocated framebuffers rotate between the producer (being rendered), the consumer
+ * (being shown) and the latest completed frame. publishing swaps the producer's buffer with the
+ * latest one, so neither side ever waits: if the display falls behind, the frame it has not
+ * picked up yet is simply overwritten and counted as dropped
+ */
+public class FrameRing {
+
+	private static final int INDEX = 3;
+
+	/**
+	 * set on the latest index while it holds a frame the consumer has not taken
+	 */
+	private static final int FRESH = 4;
+
+	private FrameBuffer[] buffers;
+
+	/**
+	 * owned by the producer
+	 */
+	private int writeIndex = 0;
+
+	/**
+	 * owned by the consumer
+	 */
+	private int readIndex = 1;
+
+	private AtomicInteger latest = new AtomicInteger(2);
+
+	private volatile Thread consumer;
+
+	/**
+	 * frames overwritten before the consumer took them, only touched by the producer
+	 */
+	public long dropped;
+
+	public FrameRing() {
+		buffers = new FrameBuffer[] { new FrameBuffer(), new FrameBuffer(), new FrameBuffer() };
+	}
+
+	public void reset() {
+		for(FrameBuffer buffer : buffers) {
+			buffer.reset();
+		}
+		dropped = 0;
+	}
+
+	/**
+	 * the thread to wake whenever a frame is published
+	 */
+	public void setConsumer(Thread consumer) {
+		this.consumer = consumer;
+	}
+
+	/**
+	 * the buffer the producer should render into
+	 */
+	public FrameBuffer writeBuffer() {
+		return buffers[writeIndex];
+	}
+
+	/**
+	 * the most recently completed frame, only safe to read when there is no consumer
+	 */
+	public FrameBuffer latest() {
+		return buffers[latest.get() & INDEX];
+	}
+
+	/**
+	 * publish the write buffer as the latest frame
+	 * @return the buffer to render the next frame into
+	 */
+	public FrameBuffer publish() {
+		int previous = latest.getAndSet(writeIndex | FRESH);
+		if((previous & FRESH) > 0) {
+			dropped++;
+		}
+		writeIndex = previous & INDEX;
+		Thread thread = consumer;
+		if(thread != null) {
+			LockSupport.unpark(thread);
+		}
+		return buffers[writeIndex];
+	}
+
+	/**
+	 * take the latest frame, the consumer owns it until the next take
+	 * @return null if nothing was published since the last take
+	 */
+	public FrameBuffer take() {
+		if((latest.get() & FRESH) == 0) {
+			return null;
+		}
+		readIndex = latest.getAndSet(readIndex) & INDEX;
+		return buffers[readIndex];
+	}
+
+}
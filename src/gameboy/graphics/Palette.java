@@ -1,5 +1,7 @@
 package gameboy.graphics;
 
+import java.nio.ByteBuffer;
+
 public class Palette {
 
 	public int[] bg;
@@ -15,10 +17,30 @@ public class Palette {
 		reset();
 	}
 	
+	public Palette(Palette parent) {
+		bg = parent.bg.clone();
+		obj0 = parent.obj0.clone();
+		obj1 = parent.obj1.clone();
+	}
+	
 	public void reset() {
 		for(int i = 0; i < 4; i++) {
 			bg[i] = obj0[i] = obj1[i] = 0xFF;
 		}
 	}
 	
+	public void saveState(ByteBuffer out) {
+		for(int i = 0; i < 4; i++) {
+			out.putInt(bg[i]).putInt(obj0[i]).putInt(obj1[i]);
+		}
+	}
+	
+	public void loadState(ByteBuffer in) {
+		for(int i = 0; i < 4; i++) {
+			bg[i] = in.getInt();
+			obj0[i] = in.getInt();
+			obj1[i] = in.getInt();
+		}
+	}
+	
 }
@@ -2,6 +2,11 @@ package gameboy.graphics;
 
 public class PixelRGBMapper {
 	
+	/**
+	 * ARGB of the four shades, indexed by 2bpp pixel value: off, light, dark, on
+	 */
+	public static final int[] SHADES = new int[] { 0xFFFFFFFF, 0xFFC0C0C0, 0xFF606060, 0xFF000000 };
+	
 	private RGB OFF = new RGB(255, 255, 255);
 	
 	private RGB LO = new RGB(192, 192, 192);
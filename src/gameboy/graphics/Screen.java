@@ -4,30 +4,27 @@ import gameboy.GameBoy;
 import gameboy.keyboard.KeyBoard;
 
 import java.awt.Canvas;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 public class Screen extends Canvas {
 	
-	private GameBoy gb = GameBoy.getInstance();
+	private GameBoy gb;
 	
-	private int width = 160;
+	private int width = FrameBuffer.WIDTH;
 	
-	private int height = 144;
+	private int height = FrameBuffer.HEIGHT;
 	
 	private int zoom = 1;
 	
 	private int pixelSize = 2;
-	
-	private int[] data;
 
 
 	/**
@@ -38,7 +35,8 @@ public class Screen extends Canvas {
 
 	private BufferStrategy strategy;
 
-	public Screen() {
+	public Screen(GameBoy gb) {
+		this.gb = gb;
 	}
 
 	public void init() {
@@ -81,40 +79,48 @@ public class Screen extends Canvas {
 		// to manage our accelerated graphics
 		createBufferStrategy(2);
 		strategy = getBufferStrategy();
-		
-		data = new int[width * height * 4];
-		for(int i = 0; i < data.length; i++) {
-			data[i] = 0xFF;
-		}
+	}
+
+	/**
+	 * start the display thread, it shows the latest completed frame so a slow
+	 * strategy.show() never stalls emulation
+	 */
+	public void start() {
+		Thread display = new Thread(new Runnable() {
+			public void run() {
+				Screen.this.run();
+			}
+		}, "display");
+		display.setDaemon(true);
+		gb.gpu.frames.setConsumer(display);
+		display.start();
 	}
 
 	public void run() {
-		draw();
+		FrameRing frames = gb.gpu.frames;
+		while(true) {
+			FrameBuffer frame = frames.take();
+			if(frame == null) {
+				// woken by the next publish
+				LockSupport.park(this);
+			} else {
+				draw(frame);
+			}
+		}
 	}
 
-	private void draw() {
+	/**
+	 * blit a framebuffer, scaled to the window, in a single drawImage
+	 */
+	private void draw(FrameBuffer frame) {
 		Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
-		g.setColor(Color.BLACK);
-		g.fillRect(0, 0, pixelSize * width(), pixelSize * height());
-
-		// draw axis
-		//g.drawLine(0, (dim * squareSize), (dim * squareSize) * 2, (dim * squareSize));
+		g.drawImage(frame.image, 0, 0, pixelSize * width(), pixelSize * height(), null);
 
 		// and flip the buffer over
 		g.dispose();
 		strategy.show();
 	}
 
-
-	
-	public void drawSquare(int x, int y, Color c, Graphics2D g) {
-		g.setColor(c);
-		Rectangle2D rectangle = new Rectangle2D.Float(x * pixelSize, y
-				* pixelSize, pixelSize, pixelSize);
-		g.fill(rectangle);
-		g.draw(rectangle);
-	}
-
 	
 	public int width() {
 		return width;
@@ -2,6 +2,7 @@ package gameboy.keyboard;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.nio.ByteBuffer;
 
 public class KeyBoard extends KeyAdapter {
 
@@ -12,12 +13,27 @@ public class KeyBoard extends KeyAdapter {
 	public KeyBoard() {
 	}
 
+	public KeyBoard(KeyBoard parent) {
+		keys = parent.keys.clone();
+		colidX = parent.colidX;
+	}
+
 	public void reset() {
 		keys[0] = 0x0F;
 		keys[1] = 0x0F;
 		colidX = 0;
 	}
 
+	public void saveState(ByteBuffer out) {
+		out.putInt(keys[0]).putInt(keys[1]).putInt(colidX);
+	}
+
+	public void loadState(ByteBuffer in) {
+		keys[0] = in.getInt();
+		keys[1] = in.getInt();
+		colidX = in.getInt();
+	}
+
 	public void writeByte(int value) {
 		colidX = value & 0x30;
 		
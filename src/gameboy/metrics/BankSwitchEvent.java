@@ -0,0 +1,25 @@
+package gameboy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * the bank controller mapped a different rom or ram bank
+ */
+@Name("gameboy.BankSwitch")
+@Label("Bank Switch")
+@Category("Game Boy")
+@Description("ROM or RAM bank mapped by the cartridge bank controller")
+public class BankSwitchEvent extends Event {
+
+	@Label("RAM")
+	@Description("True for a ram bank, false for a rom bank")
+	public boolean ram;
+
+	@Label("Bank")
+	public int bank;
+
+}
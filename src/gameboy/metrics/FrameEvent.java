@@ -0,0 +1,26 @@
+package gameboy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * the gpu finished a frame, the duration is the host time since the previous one, including
+ * any time a FramePacer spent waiting
+ */
+@Name("gameboy.Frame")
+@Label("Frame")
+@Category("Game Boy")
+@Description("Frame completed by the GPU")
+public class FrameEvent extends Event {
+
+	@Label("Frame")
+	public long frame;
+
+	@Label("CPU Clock")
+	@Description("Machine cycles at the end of the frame")
+	public long cycles;
+
+}
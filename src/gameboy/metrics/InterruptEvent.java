@@ -0,0 +1,25 @@
+package gameboy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * the cpu serviced an interrupt
+ */
+@Name("gameboy.Interrupt")
+@Label("Interrupt")
+@Category("Game Boy")
+@Description("Interrupt serviced by the CPU")
+public class InterruptEvent extends Event {
+
+	@Label("Vector")
+	public int vector;
+
+	@Label("Return Address")
+	@Description("PC the handler returns to")
+	public int pc;
+
+}
@@ -0,0 +1,52 @@
+package gameboy.metrics;
+
+/**
+ * counters of one machine, plain fields bumped by the emulation thread and read by a Monitor
+ *
+ * instructions, cycles and frames run are read straight from the cpu and the GameBoy, only
+ * what nothing else counts lives here. a sampling thread may see values a little stale, never
+ * anything the emulation thread has to wait for.
+ */
+public class Metrics {
+
+	/**
+	 * count MMU reads and writes per region, enable with -Dgameboy.metrics.mmu=true. off by
+	 * default as it costs an increment on every memory access
+	 */
+	public static final boolean COUNT_ACCESSES = "true".equals(System.getProperty("gameboy.metrics.mmu"));
+
+	public static final String[] REGION_NAMES = new String[] { "rom0", "romx", "vram", "eram", "wram", "high" };
+
+	/**
+	 * region of each 4KB block of the address space, echo ram counts as wram up to E000-EFFF
+	 * and F000-FFFF (echo, oam, io and zero page) as high
+	 */
+	public static final int[] REGIONS = new int[] { 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 4, 5 };
+
+	/**
+	 * interrupts serviced by the cpu
+	 */
+	public long interrupts;
+
+	/**
+	 * frames the gpu finished and published
+	 */
+	public long framesRendered;
+
+	/**
+	 * rom and ram bank changes that remapped the MMU
+	 */
+	public long bankSwitches;
+
+	/**
+	 * accesses per region of REGION_NAMES, only counted with COUNT_ACCESSES
+	 */
+	public long[] reads = new long[REGION_NAMES.length];
+
+	public long[] writes = new long[REGION_NAMES.length];
+
+	public static int region(int address) {
+		return REGIONS[(address >> 12) & 0xF];
+	}
+
+}
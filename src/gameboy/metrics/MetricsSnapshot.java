@@ -0,0 +1,61 @@
+package gameboy.metrics;
+
+import gameboy.GameBoy;
+
+import java.io.PrintStream;
+
+/**
+ * the counters of a machine at one point in time, two of them give the rates in between
+ */
+public class MetricsSnapshot {
+
+	public long nanoTime;
+
+	public long instructions;
+
+	public long cycles;
+
+	public long frames;
+
+	public long framesRendered;
+
+	public long interrupts;
+
+	public long bankSwitches;
+
+	public long[] reads;
+
+	public long[] writes;
+
+	/**
+	 * copy gb's counters, safe from any thread
+	 */
+	public static MetricsSnapshot take(GameBoy gb) {
+		MetricsSnapshot snapshot = new MetricsSnapshot();
+		snapshot.nanoTime = System.nanoTime();
+		snapshot.instructions = gb.z80.instructions();
+		snapshot.cycles = gb.z80.clock.M;
+		snapshot.frames = gb.frames;
+		snapshot.framesRendered = gb.metrics.framesRendered;
+		snapshot.interrupts = gb.metrics.interrupts;
+		snapshot.bankSwitches = gb.metrics.bankSwitches;
+		snapshot.reads = gb.metrics.reads.clone();
+		snapshot.writes = gb.metrics.writes.clone();
+		return snapshot;
+	}
+
+	/**
+	 * per second rate of a counter between an earlier snapshot and this one
+	 */
+	public double rate(long now, long then, MetricsSnapshot earlier) {
+		long nanos = nanoTime - earlier.nanoTime;
+		return (nanos <= 0) ? 0 : (now - then) * 1e9 / nanos;
+	}
+
+	public void print(PrintStream out, MetricsSnapshot earlier) {
+		out.println(String.format("instructions/sec: %.0f, frames/sec: %.1f, interrupts/sec: %.0f, bank switches/sec: %.0f",
+				rate(instructions, earlier.instructions, earlier), rate(framesRendered, earlier.framesRendered, earlier),
+				rate(interrupts, earlier.interrupts, earlier), rate(bankSwitches, earlier.bankSwitches, earlier)));
+	}
+
+}
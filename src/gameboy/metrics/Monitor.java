@@ -0,0 +1,164 @@
+package gameboy.metrics;
+
+import gameboy.GameBoy;
+import gameboy.RunStats;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * samples a machine's counters off the emulation thread and publishes them as an MBean
+ *
+ * a daemon thread takes a MetricsSnapshot every period, the MBean getters answer from the
+ * latest two so JMX clients never touch the running machine. with -Dgameboy.metrics.log=true
+ * every sample also prints its rates. interactive sessions always have one, headless and fleet
+ * runs only with -Dgameboy.metrics.jmx=true.
+ */
+public class Monitor implements MonitorMBean {
+
+	public static final long PERIOD_MILLIS = 1000;
+
+	public static final boolean LOG = "true".equals(System.getProperty("gameboy.metrics.log"));
+
+	/**
+	 * attach a Monitor to headless and fleet runs too
+	 */
+	public static final boolean JMX = "true".equals(System.getProperty("gameboy.metrics.jmx"));
+
+	private GameBoy gb;
+
+	private ObjectName name;
+
+	private ScheduledExecutorService sampler;
+
+	private volatile MetricsSnapshot previous;
+
+	private volatile MetricsSnapshot latest;
+
+	public Monitor(GameBoy gb) {
+		this.gb = gb;
+		latest = MetricsSnapshot.take(gb);
+		previous = latest;
+	}
+
+	/**
+	 * register as gameboy:type=Monitor,name=&lt;name&gt; and start sampling
+	 */
+	public void start(String name) {
+		try {
+			this.name = new ObjectName("gameboy:type=Monitor,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+		} catch (JMException e) {
+			// sampling still works without jmx
+			System.err.println("could not register " + this.name + ": " + e);
+			this.name = null;
+		}
+		sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		sampler.scheduleAtFixedRate(this::sample, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * a started Monitor for gb if -Dgameboy.metrics.jmx=true, else null
+	 */
+	public static Monitor attach(GameBoy gb, String name) {
+		if (!JMX) {
+			return null;
+		}
+		Monitor monitor = new Monitor(gb);
+		monitor.start(name);
+		return monitor;
+	}
+
+	public void stop() {
+		if (sampler != null) {
+			sampler.shutdown();
+			sampler = null;
+		}
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (JMException e) {
+			}
+			name = null;
+		}
+	}
+
+	/**
+	 * take a new snapshot, called by the sampler thread
+	 */
+	public void sample() {
+		previous = latest;
+		latest = MetricsSnapshot.take(gb);
+		if (LOG) {
+			latest.print(System.out, previous);
+		}
+	}
+
+	public MetricsSnapshot latest() {
+		return latest;
+	}
+
+	public long getInstructions() {
+		return latest.instructions;
+	}
+
+	public long getCycles() {
+		return latest.cycles;
+	}
+
+	public long getFrames() {
+		return latest.frames;
+	}
+
+	public long getFramesRendered() {
+		return latest.framesRendered;
+	}
+
+	public long getInterrupts() {
+		return latest.interrupts;
+	}
+
+	public long getBankSwitches() {
+		return latest.bankSwitches;
+	}
+
+	public String[] getRegionNames() {
+		return Metrics.REGION_NAMES.clone();
+	}
+
+	public long[] getReads() {
+		return latest.reads.clone();
+	}
+
+	public long[] getWrites() {
+		return latest.writes.clone();
+	}
+
+	public double getInstructionsPerSecond() {
+		MetricsSnapshot now = latest;
+		MetricsSnapshot then = previous;
+		return now.rate(now.instructions, then.instructions, then);
+	}
+
+	public double getFramesPerSecond() {
+		MetricsSnapshot now = latest;
+		MetricsSnapshot then = previous;
+		return now.rate(now.framesRendered, then.framesRendered, then);
+	}
+
+	public double getSpeed() {
+		MetricsSnapshot now = latest;
+		MetricsSnapshot then = previous;
+		return now.rate(now.cycles, then.cycles, then) / RunStats.CYCLES_PER_SECOND;
+	}
+
+}
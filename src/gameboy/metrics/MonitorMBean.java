@@ -0,0 +1,35 @@
+package gameboy.metrics;
+
+/**
+ * what a Monitor publishes over JMX, totals and rates as of the last sample
+ */
+public interface MonitorMBean {
+
+	long getInstructions();
+
+	long getCycles();
+
+	long getFrames();
+
+	long getFramesRendered();
+
+	long getInterrupts();
+
+	long getBankSwitches();
+
+	String[] getRegionNames();
+
+	long[] getReads();
+
+	long[] getWrites();
+
+	double getInstructionsPerSecond();
+
+	double getFramesPerSecond();
+
+	/**
+	 * emulated time over wall time in the last sample period, 1.0 is real speed
+	 */
+	double getSpeed();
+
+}
@@ -1,12 +1,27 @@
 package gameboy.mmu;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-public abstract class AbstractMemoryBank {
+public abstract class AbstractMemoryBank implements Cloneable {
 
 	/**
-	 * The actual memory
+	 * memory is held in pages the size of the MMU's page table entries, so the page table can
+	 * point straight at them and a fork can share them
 	 */
-	protected int[] buffer;
+	public static final int PAGE_SIZE = 0x100;
+
+	/**
+	 * The actual memory, one byte per address, read back unsigned
+	 */
+	protected byte[][] pages;
+
+	/**
+	 * pages shared with a fork, copied before they are first written
+	 */
+	private boolean[] shared;
+
+	private int size;
 	
 	/**
 	 * In a memory model, if the starting address is 0xFF, then the addressOffset should be set to 0xFF
@@ -18,12 +33,12 @@ public abstract class AbstractMemoryBank {
 	}
 	
 	protected AbstractMemoryBank(int size, int addressOffset) {
-		try {
-		buffer = new int[size];
-		} catch(OutOfMemoryError e) {
-			e.printStackTrace();
-			System.exit(1);
+		pages = new byte[(size + PAGE_SIZE - 1) / PAGE_SIZE][];
+		for(int i = 0; i < pages.length; i++) {
+			pages[i] = new byte[Math.min(PAGE_SIZE, size - i * PAGE_SIZE)];
 		}
+		shared = new boolean[pages.length];
+		this.size = size;
 		this.addressOffset = addressOffset;
 	}
 	
@@ -36,7 +51,7 @@ public abstract class AbstractMemoryBank {
 	public void writeWord(int address, int value) {
 		int effectiveAddress = address - addressOffset;
 		writeByte(effectiveAddress, value & 0xFF);
-		writeByte(effectiveAddress + 1, (value & 0xFF) >> 8);
+		writeByte(effectiveAddress + 1, (value >> 8) & 0xFF);
 	}
 	
 	/**
@@ -61,12 +76,10 @@ public abstract class AbstractMemoryBank {
 		
 		//System.err.println(this.getClass());
 		if(effectiveAddress < 0 || effectiveAddress >= size()) {
-			System.out.println("Address out of range: address: 0x" + Integer.toHexString(effectiveAddress).toUpperCase() + ", range (0x" + Integer.toHexString(addressOffset).toUpperCase() + " - 0x" + Integer.toHexString(addressOffset + size()).toUpperCase()  + ")");
-			System.out.println(this.getClass());
-			System.exit(1);
+			throw new AddressOutOfBoundsException(this, effectiveAddress, addressOffset);
 		}
 		// System.out.println(MMUUtils.memoryToHexString(effectiveAddress, value));
-		buffer[effectiveAddress] = value & 0xFF;
+		writablePage(effectiveAddress >> 8)[effectiveAddress & 0xFF] = (byte) value;
 	}
 	
 	/**
@@ -79,21 +92,79 @@ public abstract class AbstractMemoryBank {
 		int effectiveAddress = address - addressOffset;
 		//System.err.println(this.getClass());
 		if(effectiveAddress < 0 || effectiveAddress >= size()) {
-			System.out.println("Address out of range: address: 0x" + Integer.toHexString(effectiveAddress).toUpperCase() + ", range (0x" + Integer.toHexString(addressOffset).toUpperCase() + " - 0x" + Integer.toHexString(addressOffset + size()).toUpperCase()  + ")");
-			System.out.println(this.getClass());
-			System.exit(1);
+			throw new AddressOutOfBoundsException(this, effectiveAddress, addressOffset);
 		}
-		//System.out.println(MMUUtils.memoryToHexString(effectiveAddress, buffer[effectiveAddress] & 0xFF));
-		return buffer[effectiveAddress] & 0xFF;
+		//System.out.println(MMUUtils.memoryToHexString(effectiveAddress, pages[effectiveAddress >> 8][effectiveAddress & 0xFF] & 0xFF));
+		return pages[effectiveAddress >> 8][effectiveAddress & 0xFF] & 0xFF;
 	}
 	
 	public int size() {
-		return buffer.length;
+		return size;
+	}
+	
+	public byte[] page(int page) {
+		return pages[page];
+	}
+	
+	/**
+	 * the page as a buffer when the bank is backed by a mapped file instead of pages
+	 */
+	public ByteBuffer mappedPage(int page) {
+		return null;
+	}
+	
+	public boolean isShared(int page) {
+		return shared[page];
+	}
+	
+	/**
+	 * the page for writing, copied first if it is still shared with a fork
+	 */
+	public byte[] writablePage(int page) {
+		if(shared[page]) {
+			pages[page] = pages[page].clone();
+			shared[page] = false;
+		}
+		return pages[page];
+	}
+	
+	/**
+	 * a copy of this bank sharing all of its pages, this bank and the copy each
+	 * copy a page before writing to it so neither sees the other's writes
+	 */
+	public AbstractMemoryBank fork() {
+		try {
+			AbstractMemoryBank copy = (AbstractMemoryBank) super.clone();
+			copy.pages = pages.clone();
+			copy.shared = new boolean[pages.length];
+			Arrays.fill(copy.shared, true);
+			Arrays.fill(shared, true);
+			return copy;
+		} catch(CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
 	}
 	
 	public void reset() {
-		for(int i = 0; i < buffer.length; i++) {
-			buffer[i] = 0;
+		for(int i = 0; i < pages.length; i++) {
+			if(shared[i]) {
+				pages[i] = new byte[pages[i].length];
+				shared[i] = false;
+			} else {
+				Arrays.fill(pages[i], (byte) 0);
+			}
+		}
+	}
+	
+	public void saveState(ByteBuffer out) {
+		for(byte[] page : pages) {
+			out.put(page);
+		}
+	}
+	
+	public void loadState(ByteBuffer in) {
+		for(int i = 0; i < pages.length; i++) {
+			in.get(writablePage(i));
 		}
 	}
 	
@@ -0,0 +1,17 @@
+package gameboy.mmu;
+
+/**
+ * an access outside a memory bank, thrown instead of stopping the JVM so that one broken session
+ * does not take down the others running beside it
+ */
+public class AddressOutOfBoundsException extends IndexOutOfBoundsException {
+
+	private static final long serialVersionUID = 1L;
+
+	public AddressOutOfBoundsException(AbstractMemoryBank bank, int address, int addressOffset) {
+		super("Address out of range: address: 0x" + Integer.toHexString(address).toUpperCase() + ", range (0x"
+				+ Integer.toHexString(addressOffset).toUpperCase() + " - 0x"
+				+ Integer.toHexString(addressOffset + bank.size()).toUpperCase() + ") in " + bank.getClass().getSimpleName());
+	}
+
+}
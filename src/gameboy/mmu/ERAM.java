@@ -6,5 +6,9 @@ public class ERAM extends AbstractMemoryBank {
 	public ERAM() {
 		super(0x2000);
 	}
+	
+	public ERAM(int size) {
+		super(size);
+	}
 
 }
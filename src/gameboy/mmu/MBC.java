@@ -0,0 +1,204 @@
+package gameboy.mmu;
+
+import gameboy.metrics.BankSwitchEvent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * memory bank controller, takes the cartridge register writes to 0000-7FFF and the external
+ * ram accesses the page table can't serve
+ *
+ * this base class is a cartridge without a controller, rom writes are ignored and the external
+ * ram is always on. a bank switch only recomputes MMU.romOffs, rom0Offs or ramOffs and remaps
+ * those pages, so reads through the page table stay a single array index whatever the bank.
+ */
+public class MBC implements Cloneable {
+
+	public static final int ROM_BANK_SIZE = 0x4000;
+
+	public static final int RAM_BANK_SIZE = 0x2000;
+
+	protected MMU mmu;
+
+	/**
+	 * 16KB rom banks and 8KB ram banks on the cartridge, both powers of two
+	 */
+	protected int romBanks;
+
+	protected int ramBanks;
+
+	public MBC(MMU mmu, int romBanks, int ramBanks) {
+		this.mmu = mmu;
+		this.romBanks = romBanks;
+		this.ramBanks = ramBanks;
+	}
+
+	/**
+	 * the controller for a cartridge type (header 0147), unknown types get none
+	 */
+	public static MBC create(MMU mmu, int cartType, int romBanks, int ramBanks) {
+		switch (cartType) {
+			case 0x01:
+			case 0x02:
+			case 0x03:
+				return new MBC1(mmu, romBanks, ramBanks);
+			case 0x05:
+			case 0x06:
+				return new MBC2(mmu, romBanks, ramBanks);
+			case 0x0F:
+			case 0x10:
+			case 0x11:
+			case 0x12:
+			case 0x13:
+				return new MBC3(mmu, romBanks, ramBanks);
+			case 0x19:
+			case 0x1A:
+			case 0x1B:
+			case 0x1C:
+			case 0x1D:
+			case 0x1E:
+				return new MBC5(mmu, romBanks, ramBanks);
+		}
+		return new MBC(mmu, romBanks, ramBanks);
+	}
+
+	/**
+	 * 16KB banks for the rom size in the header (0148)
+	 */
+	public static int romBanks(int romSize) {
+		return 2 << Math.min(romSize, 8);
+	}
+
+	/**
+	 * bytes of external ram for the ram size in the header (0149)
+	 */
+	public static int ramSize(int ramSize) {
+		switch (ramSize) {
+			case 1:
+				return 0x800;
+			case 2:
+				return 0x2000;
+			case 3:
+				return 0x8000;
+			case 4:
+				return 0x20000;
+			case 5:
+				return 0x10000;
+		}
+		return 0;
+	}
+
+	public void reset() {
+		mmu.romBank = 1;
+		mmu.ramBank = 0;
+		mmu.mode = 0;
+		mmu.ramOn = 1;
+		mmu.romOffs = ROM_BANK_SIZE;
+		mmu.rom0Offs = 0;
+		mmu.ramOffs = 0;
+	}
+
+	/**
+	 * a write to the cartridge rom area, 0000-7FFF
+	 */
+	public void writeByte(int address, int value) {
+	}
+
+	/**
+	 * whether A000-BFFF can be served from the page table, otherwise readRam and writeRam see every access
+	 */
+	public boolean ramMapped() {
+		return mmu.ramOn == 1;
+	}
+
+	/**
+	 * read A000-BFFF, address relative to A000
+	 */
+	public int readRam(int address) {
+		return (mmu.ramOn == 1) ? mmu.eram.readByte(mmu.ramOffs + address) : 0xFF;
+	}
+
+	public void writeRam(int address, int value) {
+		if (mmu.ramOn == 1) {
+			mmu.writeRam(mmu.eram, mmu.ramOffs + address, value);
+		}
+	}
+
+	// the page table is only touched when the mapping actually changes, games rewrite these often
+
+	protected void setRomBank(int bank) {
+		mmu.romBank = bank;
+		int offset = (bank & (romBanks - 1)) * ROM_BANK_SIZE;
+		if (offset != mmu.romOffs) {
+			mmu.romOffs = offset;
+			mmu.mapRomBank();
+			switched(false, bank);
+		}
+	}
+
+	/**
+	 * the bank at 0000-3FFF, only an MBC1 moves it
+	 */
+	protected void setRom0Bank(int bank) {
+		int offset = (bank & (romBanks - 1)) * ROM_BANK_SIZE;
+		if (offset != mmu.rom0Offs) {
+			mmu.rom0Offs = offset;
+			mmu.mapRom0Bank();
+			switched(false, bank);
+		}
+	}
+
+	protected void setRamBank(int bank) {
+		mmu.ramBank = bank;
+		int offset = (bank & (ramBanks - 1)) * RAM_BANK_SIZE;
+		if (offset != mmu.ramOffs) {
+			mmu.ramOffs = offset;
+			mmu.mapRamBank();
+			switched(true, bank);
+		}
+	}
+
+	/**
+	 * count a bank change, and record it when jfr is recording bank switches
+	 */
+	private void switched(boolean ram, int bank) {
+		mmu.metrics().bankSwitches++;
+		BankSwitchEvent event = new BankSwitchEvent();
+		if (event.isEnabled()) {
+			event.ram = ram;
+			event.bank = bank;
+			event.commit();
+		}
+	}
+
+	protected void setRamOn(boolean on) {
+		int ramOn = on ? 1 : 0;
+		if (ramOn != mmu.ramOn) {
+			mmu.ramOn = ramOn;
+			mmu.mapRamBank();
+		}
+	}
+
+	/**
+	 * controller state beyond the MMU bank registers
+	 */
+	public void saveState(ByteBuffer out) {
+	}
+
+	public void loadState(ByteBuffer in) {
+	}
+
+	/**
+	 * a copy of this controller for a fork of its machine
+	 */
+	public MBC fork(MMU mmu) {
+		try {
+			MBC copy = (MBC) clone();
+			copy.mmu = mmu;
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+}
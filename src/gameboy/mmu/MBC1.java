@@ -0,0 +1,75 @@
+package gameboy.mmu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MBC1, up to 2MB rom and 32KB ram. the two bits written to 4000-5FFF (BANK2) are always bits 5-6
+ * of the 4000-7FFF rom bank. in mode 1 they also select the 0000-3FFF bank (0x00, 0x20, 0x40 or
+ * 0x60) and the ram bank, in mode 0 those are bank 0. bank numbers past the cartridge's size wrap,
+ * so on a 512KB cartridge with 32KB ram BANK2 only reaches the ram, and on a 1MB one only bit 0
+ * of it reaches the rom
+ *
+ * MMU.romBank holds the whole 4000-7FFF bank number, BANK2 included, so saved states need nothing more
+ */
+public class MBC1 extends MBC {
+
+	public MBC1(MMU mmu, int romBanks, int ramBanks) {
+		super(mmu, romBanks, ramBanks);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		mmu.ramOn = 0;
+	}
+
+	@Override
+	public void writeByte(int address, int value) {
+		switch (address & 0x6000) {
+			// Turn external RAM on
+			case 0x0000:
+				setRamOn((value & 0xF) == 0xA);
+				break;
+			// ROM bank, lower 5 bits, bank 0 selects 1
+			case 0x2000:
+				value &= 0x1F;
+				if (value == 0) {
+					value = 1;
+				}
+				setRomBank((mmu.romBank & 0x60) | value);
+				break;
+			// BANK2, upper ROM bank bits, and the RAM and low ROM bank in mode 1
+			case 0x4000:
+				setRomBank((mmu.romBank & 0x1F) | ((value & 3) << 5));
+				mapMode();
+				break;
+			// Banking mode
+			case 0x6000:
+				mmu.mode = value & 1;
+				mapMode();
+				break;
+		}
+	}
+
+	/**
+	 * BANK2 as it applies to 0000-3FFF and the ram, 0 in mode 0
+	 */
+	private int bank2() {
+		return (mmu.mode > 0) ? (mmu.romBank >> 5) & 3 : 0;
+	}
+
+	/**
+	 * point 0000-3FFF and the ram at the banks of the current mode
+	 */
+	private void mapMode() {
+		setRom0Bank(bank2() << 5);
+		setRamBank(bank2());
+	}
+
+	@Override
+	public void loadState(ByteBuffer in) {
+		// rom0Offs is not saved, it follows from the registers that are. the MMU remaps after this
+		mmu.rom0Offs = ((bank2() << 5) & (romBanks - 1)) * ROM_BANK_SIZE;
+	}
+
+}
@@ -0,0 +1,52 @@
+package gameboy.mmu;
+
+/**
+ * MBC2, up to 256KB rom and 512 half bytes of ram inside the controller. address bit 8 picks
+ * between the ram enable and rom bank registers, the ram is never mapped since only the low
+ * nibble of each byte exists
+ */
+public class MBC2 extends MBC {
+
+	private static final int RAM_SIZE = 0x200;
+
+	public MBC2(MMU mmu, int romBanks, int ramBanks) {
+		super(mmu, romBanks, ramBanks);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		mmu.ramOn = 0;
+	}
+
+	@Override
+	public void writeByte(int address, int value) {
+		if (address >= 0x4000) {
+			return;
+		}
+		if ((address & 0x100) == 0) {
+			setRamOn((value & 0xF) == 0xA);
+		} else {
+			value &= 0xF;
+			setRomBank((value == 0) ? 1 : value);
+		}
+	}
+
+	@Override
+	public boolean ramMapped() {
+		return false;
+	}
+
+	@Override
+	public int readRam(int address) {
+		return (mmu.ramOn == 1) ? mmu.eram.readByte(address & (RAM_SIZE - 1)) | 0xF0 : 0xFF;
+	}
+
+	@Override
+	public void writeRam(int address, int value) {
+		if (mmu.ramOn == 1) {
+			mmu.writeRam(mmu.eram, address & (RAM_SIZE - 1), value & 0xF);
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+package gameboy.mmu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MBC3, up to 2MB rom, 32KB ram and a real time clock
+ *
+ * writing 08-0C to 4000-5FFF puts the clock registers (seconds, minutes, hours, day low,
+ * day high) at A000-BFFF instead of ram. the clock runs on emulated time rather than the host's,
+ * so it stays deterministic across save states and forks, and is latched by writing 0 then 1
+ * to 6000-7FFF.
+ */
+public class MBC3 extends MBC {
+
+	/**
+	 * machine cycles per second
+	 */
+	public static final long CYCLES_PER_SECOND = 1048576;
+
+	private static final int SECONDS = 0;
+
+	private static final int MINUTES = 1;
+
+	private static final int HOURS = 2;
+
+	private static final int DAY_LOW = 3;
+
+	private static final int DAY_HIGH = 4;
+
+	/**
+	 * the selected clock register, -1 while a ram bank is selected
+	 */
+	private int rtcRegister;
+
+	/**
+	 * clock value in seconds at rtcStart, days included
+	 */
+	private long rtcSeconds;
+
+	private long rtcStart;
+
+	private boolean halted;
+
+	/**
+	 * day counter overflow, sticky until written
+	 */
+	private boolean carry;
+
+	private int lastLatchWrite;
+
+	private int[] latched = new int[5];
+
+	public MBC3(MMU mmu, int romBanks, int ramBanks) {
+		super(mmu, romBanks, ramBanks);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		mmu.ramOn = 0;
+		rtcRegister = -1;
+		rtcSeconds = 0;
+		rtcStart = mmu.cycles();
+		halted = false;
+		carry = false;
+		lastLatchWrite = -1;
+		for (int i = 0; i < latched.length; i++) {
+			latched[i] = 0;
+		}
+	}
+
+	@Override
+	public void writeByte(int address, int value) {
+		switch (address & 0x6000) {
+			case 0x0000:
+				setRamOn((value & 0xF) == 0xA);
+				break;
+			// ROM bank, 7 bits, bank 0 selects 1
+			case 0x2000:
+				value &= 0x7F;
+				setRomBank((value == 0) ? 1 : value);
+				break;
+			// RAM bank or clock register
+			case 0x4000:
+				boolean wasClock = rtcRegister >= 0;
+				if (value >= 0x08 && value <= 0x0C) {
+					rtcRegister = value - 0x08;
+					if (!wasClock) {
+						mmu.mapRamBank();
+					}
+				} else {
+					rtcRegister = -1;
+					setRamBank(value & 3);
+					if (wasClock) {
+						mmu.mapRamBank();
+					}
+				}
+				break;
+			case 0x6000:
+				if (lastLatchWrite == 0 && value == 1) {
+					latch();
+				}
+				lastLatchWrite = value;
+				break;
+		}
+	}
+
+	@Override
+	public boolean ramMapped() {
+		return rtcRegister < 0 && super.ramMapped();
+	}
+
+	@Override
+	public int readRam(int address) {
+		if (rtcRegister >= 0) {
+			return (mmu.ramOn == 1) ? latched[rtcRegister] : 0xFF;
+		}
+		return super.readRam(address);
+	}
+
+	@Override
+	public void writeRam(int address, int value) {
+		if (rtcRegister >= 0) {
+			if (mmu.ramOn == 1) {
+				writeClock(rtcRegister, value);
+			}
+			return;
+		}
+		super.writeRam(address, value);
+	}
+
+	/**
+	 * seconds on the clock now
+	 */
+	private long seconds() {
+		if (halted) {
+			return rtcSeconds;
+		}
+		return rtcSeconds + (mmu.cycles() - rtcStart) / CYCLES_PER_SECOND;
+	}
+
+	private void latch() {
+		long seconds = seconds();
+		long days = seconds / 86400;
+		if (days > 0x1FF) {
+			carry = true;
+		}
+		latched[SECONDS] = (int) (seconds % 60);
+		latched[MINUTES] = (int) (seconds / 60 % 60);
+		latched[HOURS] = (int) (seconds / 3600 % 24);
+		latched[DAY_LOW] = (int) (days & 0xFF);
+		latched[DAY_HIGH] = (int) ((days >> 8) & 1) | (halted ? 0x40 : 0) | (carry ? 0x80 : 0);
+	}
+
+	/**
+	 * set one field of the clock, the clock restarts counting from the new value
+	 */
+	private void writeClock(int register, int value) {
+		long seconds = seconds();
+		long days = seconds / 86400 % 0x200;
+		long s = seconds % 60;
+		long m = seconds / 60 % 60;
+		long h = seconds / 3600 % 24;
+		switch (register) {
+			case SECONDS:
+				s = value % 60;
+				break;
+			case MINUTES:
+				m = value % 60;
+				break;
+			case HOURS:
+				h = value % 24;
+				break;
+			case DAY_LOW:
+				days = (days & 0x100) | (value & 0xFF);
+				break;
+			case DAY_HIGH:
+				days = (days & 0xFF) | ((value & 1) << 8);
+				halted = (value & 0x40) != 0;
+				carry = (value & 0x80) != 0;
+				break;
+		}
+		rtcSeconds = ((days * 24 + h) * 60 + m) * 60 + s;
+		rtcStart = mmu.cycles();
+		latched[register] = value;
+	}
+
+	@Override
+	public void saveState(ByteBuffer out) {
+		long phase = halted ? 0 : (mmu.cycles() - rtcStart) % CYCLES_PER_SECOND;
+		out.putInt(rtcRegister).putLong(seconds()).putLong(phase);
+		out.put((byte) (halted ? 1 : 0)).put((byte) (carry ? 1 : 0)).putInt(lastLatchWrite);
+		for (int value : latched) {
+			out.putInt(value);
+		}
+	}
+
+	@Override
+	public void loadState(ByteBuffer in) {
+		rtcRegister = in.getInt();
+		rtcSeconds = in.getLong();
+		// keep the phase within the current second
+		rtcStart = mmu.cycles() - in.getLong();
+		halted = in.get() != 0;
+		carry = in.get() != 0;
+		lastLatchWrite = in.getInt();
+		for (int i = 0; i < latched.length; i++) {
+			latched[i] = in.getInt();
+		}
+	}
+
+	@Override
+	public MBC fork(MMU mmu) {
+		MBC3 copy = (MBC3) super.fork(mmu);
+		copy.latched = latched.clone();
+		return copy;
+	}
+
+}
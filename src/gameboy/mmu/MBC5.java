@@ -0,0 +1,40 @@
+package gameboy.mmu;
+
+/**
+ * MBC5, up to 8MB rom with a 9 bit bank number, bank 0 can be selected too, and 128KB ram
+ */
+public class MBC5 extends MBC {
+
+	public MBC5(MMU mmu, int romBanks, int ramBanks) {
+		super(mmu, romBanks, ramBanks);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		mmu.ramOn = 0;
+	}
+
+	@Override
+	public void writeByte(int address, int value) {
+		switch (address & 0xF000) {
+			case 0x0000:
+			case 0x1000:
+				setRamOn((value & 0xF) == 0xA);
+				break;
+			// ROM bank, low 8 bits
+			case 0x2000:
+				setRomBank((mmu.romBank & 0x100) | value);
+				break;
+			// ROM bank, bit 8
+			case 0x3000:
+				setRomBank((mmu.romBank & 0xFF) | ((value & 1) << 8));
+				break;
+			case 0x4000:
+			case 0x5000:
+				setRamBank(value & 0xF);
+				break;
+		}
+	}
+
+}
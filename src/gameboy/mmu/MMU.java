@@ -1,13 +1,17 @@
 package gameboy.mmu;
 
 import gameboy.GameBoy;
-import gameboy.file.ROMLoader;
+import gameboy.file.BatterySave;
+import gameboy.metrics.Metrics;
+import gameboy.timer.Scheduler;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 
 public class MMU {
 	
-	private GameBoy gb = GameBoy.getInstance();
+	private GameBoy gb;
 
 	public BIOS bios;
 
@@ -24,6 +28,11 @@ public class MMU {
 	public int mode = 0;
 
 	public int romOffs = 0x4000;
+
+	/**
+	 * rom offset mapped at 0000-3FFF, bank 0 unless an MBC1 in mode 1 moved it
+	 */
+	public int rom0Offs = 0;
 	
 	public int ramOffs = 0x00;
 	
@@ -33,12 +42,36 @@ public class MMU {
 
 	public ZRAM zram;
 
+	/**
+	 * the cartridge's bank controller
+	 */
+	public MBC mbc;
+
+	/**
+	 * the .sav file backing eram, null unless loadBattery() found a battery. forks never get one
+	 */
+	public BatterySave battery;
+
 	public int inBios = 1;
 
 	public int IE = 0;
 
 	public int IF = 0;	// Interrupt flags
 
+	/**
+	 * page table, one entry per 256 byte page of the address space holding the bank page backing it.
+	 * a null entry routes the access through decodeRead/decodeWrite, as do writes to pages still
+	 * shared with a fork
+	 */
+	private byte[][] readPages = new byte[256][];
+
+	private byte[][] writePages = new byte[256][];
+
+	/**
+	 * read pages of a memory-mapped cartridge, consulted where readPages is null
+	 */
+	private ByteBuffer[] mappedPages = new ByteBuffer[256];
+
 	/**
 	 * [0000-3FFF] Cartridge ROM, bank 0: The first 16,384 bytes of the
 	 * cartridge program are always available at this point in the memory map.
@@ -134,37 +167,262 @@ public class MMU {
 	public static final int ZERO_PAGE_RAM_OFFSET = 0xFF80;
 	public static final int ZERO_PAGE_RAM_END = 0xFFFF;
 
-	public MMU() {
+	public MMU(GameBoy gb) {
+		this.gb = gb;
 		inBios = 0;
 		bios = new BIOS();
-		rom = new ROM();
+		rom = ROMCache.blank();
 		eram = new ERAM();
 		wram = new WRAM();
 		zram = new ZRAM();
+		mbc = new MBC(this, 2, 1);
+		mbc.reset();
+		mapPages();
+	}
+
+	/**
+	 * a copy of parent's memory for a fork of its machine, sharing the cartridge and ram pages
+	 * copy-on-write. the page tables of both are rebuilt by GameBoy.fork() once the vram is shared too
+	 */
+	public MMU(GameBoy gb, MMU parent) {
+		this.gb = gb;
+		inBios = parent.inBios;
+		cartType = parent.cartType;
+		romBank = parent.romBank;
+		ramBank = parent.ramBank;
+		ramOn = parent.ramOn;
+		mode = parent.mode;
+		romOffs = parent.romOffs;
+		rom0Offs = parent.rom0Offs;
+		ramOffs = parent.ramOffs;
+		IE = parent.IE;
+		IF = parent.IF;
+		bios = (BIOS) parent.bios.fork();
+		rom = (ROM) parent.rom.fork();
+		eram = (ERAM) parent.eram.fork();
+		wram = (WRAM) parent.wram.fork();
+		zram = (ZRAM) parent.zram.fork();
+		mbc = parent.mbc.fork(this);
 	}
 
 	public void reset() {
+		// the cartridge comes out, save before its ram is cleared
+		closeBattery();
 		inBios = 1;
 		IE = 0;
 		IF = 0;
 		
 		cartType = 0;
-		romBank = 0;
-		ramBank = 0;
-		ramOn = 0;
-		mode = 0;
-		romOffs = 0x4000;
-		ramOffs = 0;
+		mbc = new MBC(this, 2, eram.size() / MBC.RAM_BANK_SIZE);
+		mbc.reset();
 		
 		bios.reset();
-		rom.reset();
+		rom = ROMCache.blank();
 		eram.reset();
 		wram.reset();
 		zram.reset();
+		mapPages();
 		System.out.println("MMU Reset");
 	}
 
+	/**
+	 * rebuild the whole page table, the I/O, OAM and zero pages (FE00-FFFF) and vram writes always decode
+	 */
+	public void mapPages() {
+		for (int page = 0; page < 256; page++) {
+			readPages[page] = null;
+			mappedPages[page] = null;
+			writePages[page] = null;
+		}
+		if (inBios == 1) {
+			mapRead(0x00, 0x01, bios, 0);
+		}
+		mapRom0Bank();
+		mapRomBank();
+		mapRamBank();
+		if (gb.gpu != null) {
+			// vram writes decode so the gpu can track dirty tiles
+			mapRead(0x80, 0xA0, gb.gpu.vram, 0);
+		}
+		// working ram and its echo
+		mapRead(0xC0, 0xE0, wram, 0);
+		mapWrite(0xC0, 0xE0, wram, 0);
+		mapRead(0xE0, 0xFE, wram, 0);
+		mapWrite(0xE0, 0xFE, wram, 0);
+	}
+
+	/**
+	 * point 0000-3FFF at its rom bank
+	 */
+	public void mapRom0Bank() {
+		if (inBios == 1) {
+			// 0100-0FFF must decode to notice the BIOS handing over
+			mapRead(0x10, 0x40, rom, rom0Offs + 0x1000);
+		} else {
+			mapRead(0x00, 0x40, rom, rom0Offs);
+		}
+	}
+
+	/**
+	 * point 4000-7FFF at the current rom bank
+	 */
+	public void mapRomBank() {
+		mapRead(0x40, 0x80, rom, romOffs);
+	}
+
+	/**
+	 * point A000-BFFF at the current ram bank, or leave it to the controller while the ram is off
+	 * or something other than ram is selected
+	 */
+	public void mapRamBank() {
+		if (mbc.ramMapped()) {
+			mapRead(0xA0, 0xC0, eram, ramOffs);
+			mapWrite(0xA0, 0xC0, eram, ramOffs);
+		} else {
+			for (int page = 0xA0; page < 0xC0; page++) {
+				readPages[page] = null;
+				mappedPages[page] = null;
+				writePages[page] = null;
+			}
+		}
+	}
+
+	private void mapRead(int firstPage, int endPage, AbstractMemoryBank bank, int offset) {
+		for (int page = firstPage; page < endPage; page++, offset += 0x100) {
+			// pages past the end of the bank keep decoding, which throws AddressOutOfBoundsException
+			boolean inRange = offset + 0x100 <= bank.size();
+			readPages[page] = inRange ? bank.page(offset >> 8) : null;
+			mappedPages[page] = inRange ? bank.mappedPage(offset >> 8) : null;
+		}
+	}
+
+	private void mapWrite(int firstPage, int endPage, AbstractMemoryBank bank, int offset) {
+		for (int page = firstPage; page < endPage; page++, offset += 0x100) {
+			boolean inRange = offset + 0x100 <= bank.size();
+			// shared pages decode so the bank copies them first
+			writePages[page] = (inRange && !bank.isShared(offset >> 8)) ? bank.page(offset >> 8) : null;
+		}
+	}
+
+	/**
+	 * write a mapped ram bank through the decoder, remapping if the write had to copy a shared page
+	 */
+	void writeRam(AbstractMemoryBank bank, int address, int value) {
+		boolean shared = address < bank.size() && bank.isShared(address >> 8);
+		bank.writeByte(address, value);
+		if (shared) {
+			mapPages();
+		}
+	}
+
+	public void saveState(ByteBuffer out) {
+		out.putInt(inBios).putInt(cartType);
+		out.putInt(romBank).putInt(ramBank).putInt(ramOn).putInt(mode);
+		out.putInt(romOffs).putInt(ramOffs);
+		out.putInt(IE).putInt(IF);
+		mbc.saveState(out);
+		eram.saveState(out);
+		wram.saveState(out);
+		zram.saveState(out);
+	}
+
+	public void loadState(ByteBuffer in) {
+		inBios = in.getInt();
+		cartType = in.getInt();
+		romBank = in.getInt();
+		ramBank = in.getInt();
+		ramOn = in.getInt();
+		mode = in.getInt();
+		romOffs = in.getInt();
+		ramOffs = in.getInt();
+		IE = in.getInt();
+		IF = in.getInt();
+		mbc.loadState(in);
+		eram.loadState(in);
+		wram.loadState(in);
+		zram.loadState(in);
+		mapPages();
+		if (battery != null) {
+			// the flush deadline was set against the clock the state replaced
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * the cpu clock, for cartridge hardware that keeps time
+	 */
+	long cycles() {
+		return gb.z80.clock.M;
+	}
+
+	Metrics metrics() {
+		return gb.metrics;
+	}
+
+	/**
+	 * back eram with a .sav file if the cartridge has a battery
+	 */
+	public void loadBattery(String fileName) {
+		if (!BatterySave.hasBattery(cartType)) {
+			return;
+		}
+		closeBattery();
+		try {
+			battery = new BatterySave(eram, fileName);
+			System.out.println("Battery save " + fileName);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Battery save not available, continuing without");
+			return;
+		}
+		// loading may have copied shared pages
+		mapPages();
+		scheduleFlush();
+	}
+
+	private void scheduleFlush() {
+		gb.scheduler.schedule(Scheduler.BATTERY, gb.z80.clock.M + BatterySave.FLUSH_CYCLES);
+	}
+
+	/**
+	 * battery event, copy changed eram pages into the .sav mapping
+	 * @return the deadline of the next flush
+	 */
+	public long flushBattery(long when) {
+		if (battery == null) {
+			return Scheduler.NEVER;
+		}
+		battery.flush();
+		return when + BatterySave.FLUSH_CYCLES;
+	}
+
+	public void closeBattery() {
+		if (battery != null) {
+			battery.close();
+			battery = null;
+			gb.scheduler.cancel(Scheduler.BATTERY);
+		}
+	}
+
 	public int readByte(int address) {
+		if (Metrics.COUNT_ACCESSES) {
+			gb.metrics.reads[Metrics.region(address)]++;
+		}
+		if ((address & ~0xFFFF) == 0) {
+			int page = address >> 8;
+			byte[] buffer = readPages[page];
+			if (buffer != null) {
+				return buffer[address & 0xFF] & 0xFF;
+			}
+			ByteBuffer mapped = mappedPages[page];
+			if (mapped != null) {
+				return mapped.get(address & 0xFF) & 0xFF;
+			}
+		}
+		return decodeRead(address);
+	}
+
+	private int decodeRead(int address) {
 		//System.out.println("read: " + Integer.toHexString(address).toUpperCase());
 		switch (address & 0xF000) {
 		// ROM Bank 0
@@ -174,22 +432,22 @@ public class MMU {
 					return bios.readByte(address);
 				} else if (gb.z80.r.PC == 0x0100) {
 					inBios = 0;
+					mapPages();
 					System.out.println("MMU Leaving BIOS");
 				}
 			} else {
-				return rom.readByte(address);
+				return rom.readByte(rom0Offs + address);
 			}
 		case 0x1000:
 		case 0x2000:
 		case 0x3000:
-			return rom.readByte(address);
+			return rom.readByte(rom0Offs + address);
 
 			// ROM bank 1
 		case 0x4000:
 		case 0x5000:
 		case 0x6000:
 		case 0x7000:
-			 // return rom.readByte(address); // TODO which is correct
 			return rom.readByte(romOffs + (address & 0x3FFF));
 
 			// VRAM
@@ -200,8 +458,7 @@ public class MMU {
 			// External RAM
 		case 0xA000:
 		case 0xB000:
-			 // return eram.readByte(address & 0x1FFF); // TODO which is correct
-			return eram.readByte(ramOffs + (address & 0x1FFF));
+			return mbc.readRam(address & 0x1FFF);
 
 			// Work RAM and echo
 		case 0xC000:
@@ -274,82 +531,57 @@ public class MMU {
 	}
 	
 	public int readWord(int address) {
-		return readByte(address) + readByte(address + 1) << 8;
+		return readByte(address) + (readByte(address + 1) << 8);
 	}
 
 	public void writeByte(int address, int value) {
 		// System.out.println(MMUUtils.memoryToHexString(address, value));
+		if (Metrics.COUNT_ACCESSES) {
+			gb.metrics.writes[Metrics.region(address)]++;
+		}
+		if ((address & ~0xFFFF) == 0) {
+			int page = address >> 8;
+			byte[] buffer = writePages[page];
+			if (buffer != null) {
+				buffer[address & 0xFF] = (byte) value;
+				return;
+			}
+		}
+		decodeWrite(address, value);
+	}
+
+	private void decodeWrite(int address, int value) {
 		switch (address & 0xF000) {
-	     	// ROM bank 0
-	      	// MBC1: Turn external RAM on
+			// cartridge rom, bank controller registers
 			case 0x0000:
 			case 0x1000:
-				switch(cartType) {
-					case 1:
-						ramOn = (value & 0xF) == 0xA ? 1 : 0;
-						break;
-				}
-				break;
 			case 0x2000:
 			case 0x3000:
-				switch(cartType) {
-					case 1:
-						romBank &= 0x60;
-						value &= 0x1F;
-						if(value == 0) {
-							value = 1;
-						}
-						romBank |= value;
-						romOffs = romBank*0x4000;
-						break;
-					}
-					break;
-	
-			// ROM bank 1
-			// MBC1: RAM bank switch
 			case 0x4000:
 			case 0x5000:
-				switch(cartType) {
-				case 1:
-					if(mode > 0) {
-						ramBank = value & 3;
-						ramOffs = ramBank * 0x2000;
-					} else {
-						romBank &= 0x1F;
-						romBank |= ((value & 3) << 5);
-						romOffs = romBank * 0x4000;
-					}
-					break;
-				}
-				break;
-
 			case 0x6000:
 			case 0x7000:
-				switch(cartType) {
-				case 1:
-					mode = value & 1;
-					break;
-				}
+				mbc.writeByte(address, value);
 				break;
 	
 			// VRAM
 			case 0x8000:
 			case 0x9000:
-				gb.gpu.vram.writeByte(ramOffs + (address & 0x1FFF), value);
-				//gb.gpu.updateTile(address & 0x1FFF, value);
+				writeRam(gb.gpu.vram, address & 0x1FFF, value);
+				gb.gpu.updateTile(address, value);
 				break;
 	
 			// External RAM
 			case 0xA000:
 			case 0xB000:
-				eram.writeByte(address & 0x1FFF, value);
+				mbc.writeRam(address & 0x1FFF, value);
 				break;
 	
 			// Work RAM and echo
 			case 0xC000:
 			case 0xD000:
 			case 0xE000:
-				wram.writeByte(address & 0x1FFF, value);
+				writeRam(wram, address & 0x1FFF, value);
 				break;
 	
 			// Everything else
@@ -370,7 +602,7 @@ public class MMU {
 					case 0xB00:
 					case 0xC00:
 					case 0xD00:
-						wram.writeByte(address & 0x1FFF, value);
+						writeRam(wram, address & 0x1FFF, value);
 						break;
 		
 					// OAM
@@ -425,23 +657,23 @@ public class MMU {
 	
 	public void writeWord(int address, int value) {
 		writeByte(address, value & 0xFF);
-		writeByte(address + 1, (value & 0xFF) >> 8);
+		writeByte(address + 1, (value >> 8) & 0xFF);
 	}
 
 	public void loadROM(String romFileName) {
-		ROMLoader loader = new ROMLoader();
 		try {
-			byte[] bytes = loader.load(romFileName);
-			System.out.println("ROM File " + bytes.length + " bytes");
-			for (int i = 0; i < bytes.length; i++) {
-				rom.writeByte(i, bytes[i]);
-			}
+			rom = ROMCache.load(romFileName);
+			System.out.println("ROM File " + rom.length() + " bytes");
 			cartType = rom.readByte(0x0147);
-			System.out.println("ROM loaded: " + bytes.length +  " bytes.");
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			System.err.println("ROM file not found, stopping");
-			System.exit(1);
+			// carts without a ram size still get the 8KB bank the old fixed eram gave them
+			eram = new ERAM(Math.max(MBC.RAM_BANK_SIZE, MBC.ramSize(rom.readByte(0x0149))));
+			mbc = MBC.create(this, cartType, MBC.romBanks(rom.readByte(0x0148)), eram.size() / MBC.RAM_BANK_SIZE);
+			mbc.reset();
+			mapPages();
+			System.out.println("ROM loaded: " + rom.length() +  " bytes.");
+		} catch (IOException e) {
+			// the caller decides whether that ends the program or a single session
+			throw new UncheckedIOException("ROM file " + romFileName + " could not be read", e);
 		}
 	}
 
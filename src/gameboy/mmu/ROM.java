@@ -1,10 +1,86 @@
 package gameboy.mmu;
 
+import java.nio.ByteBuffer;
+
 
 public class ROM extends AbstractMemoryBank {
 
+	/**
+	 * smallest image, cartridges shorter than this read back zeros past their end
+	 */
+	public static final int SIZE = 0x100000;
+
+	/**
+	 * the cartridge file mapped read-only, null for an image held in pages
+	 */
+	private ByteBuffer mapped;
+
+	/**
+	 * a view of each whole page of the mapping, for the MMU page table
+	 */
+	private ByteBuffer[] mappedPages;
+
+	/**
+	 * bytes in the cartridge file
+	 */
+	private int length;
+
 	public ROM() {
-		super(0x100000);
+		super(SIZE);
+	}
+
+	/**
+	 * an image holding a copy of the cartridge file
+	 */
+	public ROM(byte[] image) {
+		super(Math.max(SIZE, (image.length + PAGE_SIZE - 1) & ~(PAGE_SIZE - 1)));
+		for(int offset = 0; offset < image.length; offset += PAGE_SIZE) {
+			System.arraycopy(image, offset, pages[offset >> 8], 0, Math.min(PAGE_SIZE, image.length - offset));
+		}
+		length = image.length;
+	}
+
+	/**
+	 * an image reading straight from a mapped cartridge file, holding no pages of its own
+	 */
+	public ROM(ByteBuffer mapped) {
+		super(0);
+		this.mapped = mapped;
+		length = mapped.limit();
+		mappedPages = new ByteBuffer[mapped.limit() / PAGE_SIZE];
+		for(int i = 0; i < mappedPages.length; i++) {
+			mappedPages[i] = mapped.slice(i * PAGE_SIZE, PAGE_SIZE);
+		}
+	}
+
+	/**
+	 * bytes in the cartridge file, size() is at least SIZE
+	 */
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public int readByte(int address) {
+		if(mapped != null) {
+			return (address < mapped.limit()) ? mapped.get(address) & 0xFF : 0;
+		}
+		return super.readByte(address);
+	}
+
+	@Override
+	public int size() {
+		return (mapped != null) ? Math.max(SIZE, mapped.limit()) : super.size();
+	}
+
+	@Override
+	public byte[] page(int page) {
+		return (mapped != null) ? null : super.page(page);
+	}
+
+	@Override
+	public ByteBuffer mappedPage(int page) {
+		return (mapped != null && page < mappedPages.length) ? mappedPages[page] : null;
 	}
 
 }
@@ -0,0 +1,123 @@
+package gameboy.mmu;
+
+import gameboy.file.ROMLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * cartridge images shared by every machine in the JVM, keyed by a hash of the file contents
+ *
+ * each image is built once and never written, every MMU maps a copy-on-write fork of it so a
+ * machine only owns its page table. bank switching just points the table at other shared pages.
+ *
+ * the images of the MAX_IMAGES cartridges used most recently are kept. an image dropped from the
+ * cache, and its mapping, lives on in the machines still running it, only the next load of that
+ * cartridge maps and hashes the file again
+ */
+public class ROMCache {
+
+	public static final int MAX_IMAGES = 16;
+
+	private static final Map<String, ROM> images = lru(MAX_IMAGES);
+
+	/**
+	 * the hash of each file loaded, by path, size and modification time, so a file that was
+	 * seen before is neither mapped nor hashed
+	 */
+	private static final Map<String, String> files = lru(MAX_IMAGES);
+
+	private static final byte[] EMPTY = new byte[0];
+
+	/**
+	 * the shared image of this cartridge
+	 */
+	public static ROM get(byte[] cartridge) {
+		return (ROM) images.computeIfAbsent(hash(cartridge), key -> new ROM(cartridge)).fork();
+	}
+
+	/**
+	 * the shared image of a cartridge file, mapping and hashing it only if it is not cached
+	 */
+	public static ROM load(String fileName) throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		String file = path + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+		String hash = files.get(file);
+		ROM image = (hash != null) ? images.get(hash) : null;
+		if(image != null) {
+			return (ROM) image.fork();
+		}
+		ByteBuffer mapped = new ROMLoader().map(fileName);
+		hash = hash(mapped.duplicate());
+		files.put(file, hash);
+		return (ROM) images.computeIfAbsent(hash, key -> new ROM(mapped)).fork();
+	}
+
+	/**
+	 * the shared image of a mapped cartridge file, the first mapping of each cartridge is kept
+	 */
+	public static ROM get(ByteBuffer cartridge) {
+		return (ROM) images.computeIfAbsent(hash(cartridge.duplicate()), key -> new ROM(cartridge)).fork();
+	}
+
+	/**
+	 * an image with no cartridge, all zeros
+	 */
+	public static ROM blank() {
+		return get(EMPTY);
+	}
+
+	public static int size() {
+		return images.size();
+	}
+
+	public static void clear() {
+		images.clear();
+		files.clear();
+	}
+
+	/**
+	 * a map dropping its least recently used entry beyond capacity
+	 */
+	private static <V> Map<String, V> lru(final int capacity) {
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > capacity;
+			}
+		});
+	}
+
+	private static String hash(byte[] cartridge) {
+		return hash(ByteBuffer.wrap(cartridge));
+	}
+
+	private static String hash(ByteBuffer cartridge) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			sha.update(cartridge);
+			byte[] digest = sha.digest();
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for(byte b : digest) {
+				hex.append(String.format("%02x", b & 0xFF));
+			}
+			return hex.toString();
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package gameboy.timer;
+
+import gameboy.GameBoy;
+
+/**
+ * cycle-timestamp event scheduler
+ *
+ * each subsystem owns a fixed slot holding the machine cycle (Z80 clock.M) of its next event.
+ * the cpu only compares its clock against next after each instruction and calls run() once
+ * it has passed the earliest deadline, instead of stepping every subsystem per instruction
+ */
+public class Scheduler {
+
+	public static final long NEVER = Long.MAX_VALUE;
+
+	/**
+	 * gpu mode transition
+	 */
+	public static final int GPU = 0;
+
+	/**
+	 * TIMA overflow
+	 */
+	public static final int TIMER = 1;
+
+	/**
+	 * copy of battery backed cartridge ram into its .sav file
+	 */
+	public static final int BATTERY = 2;
+
+	private static final int SLOTS = 3;
+
+	private GameBoy gb;
+
+	private long[] deadlines;
+
+	/**
+	 * the earliest deadline of all slots
+	 */
+	public long next;
+
+	public Scheduler(GameBoy gb) {
+		this.gb = gb;
+		deadlines = new long[SLOTS];
+		reset();
+	}
+
+	/**
+	 * a copy of parent's pending events for a fork of its machine
+	 */
+	public Scheduler(GameBoy gb, Scheduler parent) {
+		this.gb = gb;
+		deadlines = parent.deadlines.clone();
+		next = parent.next;
+	}
+
+	public void reset() {
+		for(int i = 0; i < SLOTS; i++) {
+			deadlines[i] = NEVER;
+		}
+		next = NEVER;
+	}
+
+	public void schedule(int slot, long when) {
+		deadlines[slot] = when;
+		updateNext();
+	}
+
+	public void cancel(int slot) {
+		deadlines[slot] = NEVER;
+		updateNext();
+	}
+
+	public long deadline(int slot) {
+		return deadlines[slot];
+	}
+
+	/**
+	 * fire every event due at or before now, earliest first. handlers get their own deadline
+	 * rather than now so rescheduling relative to it never drifts
+	 */
+	public void run(long now) {
+		while(next <= now) {
+			int slot = 0;
+			for(int i = 1; i < SLOTS; i++) {
+				if(deadlines[i] < deadlines[slot]) {
+					slot = i;
+				}
+			}
+			long when = deadlines[slot];
+			deadlines[slot] = NEVER;
+			switch(slot) {
+				case GPU:
+					deadlines[slot] = gb.gpu.event(when);
+					break;
+				case TIMER:
+					deadlines[slot] = gb.timer.overflow(when);
+					break;
+				case BATTERY:
+					deadlines[slot] = gb.mmu.flushBattery(when);
+					break;
+			}
+			updateNext();
+		}
+	}
+
+	private void updateNext() {
+		long min = NEVER;
+		for(int i = 0; i < SLOTS; i++) {
+			if(deadlines[i] < min) {
+				min = deadlines[i];
+			}
+		}
+		next = min;
+	}
+
+}
@@ -2,114 +2,156 @@ package gameboy.timer;
 
 import gameboy.GameBoy;
 
+import java.nio.ByteBuffer;
+
+/**
+ * DIV and TIMA are not stepped per instruction, their values are derived from the cpu clock
+ * when read and only the TIMA overflow is scheduled as an event
+ */
 public class Timer {
 
-	private GameBoy gb = GameBoy.getInstance();
+	/**
+	 * machine cycles per DIV increment (16384Hz)
+	 */
+	public static final int DIV_PERIOD = 64;
 
-	public int div;
+	/**
+	 * machine cycles per TIMA increment for each TAC clock select (4096Hz, 262144Hz, 65536Hz, 16384Hz)
+	 */
+	public static final int[] TIMA_PERIODS = new int[] { 256, 4, 16, 64 };
+
+	private GameBoy gb;
 
-	public int sdiv;
+	/**
+	 * DIV value at divStart
+	 */
+	public int div;
 
 	public int tma;
 
+	/**
+	 * TIMA value at timaStart
+	 */
 	public int tima;
 
 	public int tac;
 
-	public Clock clock;
-	
-	public Timer() {
-		clock = new Clock();
+	/**
+	 * clock at which div was last set
+	 */
+	public long divStart;
+
+	/**
+	 * clock at which tima was last set
+	 */
+	public long timaStart;
+
+	public Timer(GameBoy gb) {
+		this.gb = gb;
+		reset();
+	}
+
+	/**
+	 * a copy of parent's counters for a fork of its machine, the overflow event comes with the scheduler
+	 */
+	public Timer(GameBoy gb, Timer parent) {
+		this.gb = gb;
+		div = parent.div;
+		tma = parent.tma;
+		tima = parent.tima;
+		tac = parent.tac;
+		divStart = parent.divStart;
+		timaStart = parent.timaStart;
 	}
 
 	public void reset() {
 		div = 0;
-		sdiv = 0;
 		tma = 0;
 		tima = 0;
 		tac = 0;
-		clock.reset();
+		divStart = now();
+		timaStart = now();
+		gb.scheduler.cancel(Scheduler.TIMER);
 	}
-	
-//	public void check() {
-//		if((tac & 4) > 0) {
-//			switch(tac & 3) {
-//				case 0:
-//					threshold = 64;	// 4K
-//					break;
-//					
-//				case 1:
-//					threshold = 1;	// 256K
-//					break;
-//					
-//				case 2:
-//					threshold = 4;	// 64K
-//					break;
-//					
-//				case 3:
-//					threshold = 16;	// 16K
-//					break;
-//					
-//			}
-//		}
-//	}
-
-	public void step() {
-		tima++;
-		clock.main = 0;
-		if (tima > 0xFF) {
-			tima = tma;
-			gb.mmu.IF |= 4;
-		}
+
+	private long now() {
+		return gb.z80.clock.M;
 	}
 
-	public void inc() {
-		long oldClock = clock.main;
-		clock.sub += gb.z80.r.M;
-		if (clock.sub > 3) {
-			clock.main++;
-			clock.sub -= 4;
-
-			clock.div++;
-			if (clock.div == 16) {
-				clock.div = 0;
-				div++;
-				div &= 0xFF;
-			}
+	private boolean enabled() {
+		return (tac & 4) > 0;
+	}
+
+	private int period() {
+		return TIMA_PERIODS[tac & 3];
+	}
+
+	/**
+	 * bring div and tima up to the current clock
+	 */
+	public void sync() {
+		long now = now();
+		long ticks = (now - divStart) / DIV_PERIOD;
+		div = (int) ((div + ticks) & 0xFF);
+		divStart += ticks * DIV_PERIOD;
+		if(enabled()) {
+			// the overflow event keeps tima below 0x100
+			ticks = (now - timaStart) / period();
+			tima += (int) ticks;
+			timaStart += ticks * period();
+		} else {
+			timaStart = now;
 		}
+	}
 
-		if ((tac & 4) > 0) {
-			switch (tac & 3) {
-				case 0:
-					if (clock.main >= 64) {
-						step();
-					}
-					break;
-				case 1:
-					if (clock.main >= 1) {
-						step();
-					}
-					break;
-				case 2:
-					if (clock.main >= 4) {
-						step();
-					}
-					break;
-				case 3:
-					if (clock.main >= 16) {
-						step();
-					}
-					break;
-			}
+	/**
+	 * schedule the next TIMA overflow from the current tima and timaStart
+	 */
+	private void scheduleOverflow() {
+		if(enabled()) {
+			gb.scheduler.schedule(Scheduler.TIMER, timaStart + (long) (0x100 - tima) * period());
+		} else {
+			gb.scheduler.cancel(Scheduler.TIMER);
 		}
 	}
 
+	/**
+	 * TIMA overflow event, reload from TMA and request the timer interrupt
+	 * @return the deadline of the next overflow
+	 */
+	public long overflow(long when) {
+		tima = tma;
+		timaStart = when;
+		gb.mmu.IF |= 4;
+		return when + (long) (0x100 - tima) * period();
+	}
+
+	public void saveState(ByteBuffer out) {
+		sync();
+		out.putInt(div).putInt(tima).putInt(tma).putInt(tac);
+		// phase of each counter relative to the clock
+		out.putLong(now() - divStart).putLong(now() - timaStart);
+	}
+
+	public void loadState(ByteBuffer in) {
+		div = in.getInt();
+		tima = in.getInt();
+		tma = in.getInt();
+		tac = in.getInt();
+		divStart = now() - in.getLong();
+		timaStart = now() - in.getLong();
+		scheduleOverflow();
+	}
+
 	public int readByte(int address) {
 		switch (address) {
 			case 0xFF04:
+				sync();
 				return div;
 			case 0xFF05:
-				return tima;
+				sync();
+				// reads 0 in the cycles between overflowing and the reload
+				return tima & 0xFF;
 			case 0xFF06:
 				return tma;
 			case 0xFF07:
@@ -119,18 +161,22 @@ public class Timer {
 	}
 
 	public void writeByte(int address, int value) {
+		sync();
 		switch (address) {
 			case 0xFF04:
 				div = 0;
+				divStart = now();
 				break;
 			case 0xFF05:
 				tima = value;
+				scheduleOverflow();
 				break;
 			case 0xFF06:
 				tma = value;
 				break;
 			case 0xFF07:
 				tac = value & 7;
+				scheduleOverflow();
 				break;
 		}
 	}
@@ -0,0 +1,74 @@
+package gameboy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import gameboy.file.SaveState;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ForkTest {
+
+	private static final String ROM = "src/gameboy/roms/wario_walking.gb";
+
+	/**
+	 * one address in each of wram, vram and eram
+	 */
+	private static final int[] ADDRESSES = new int[] { 0xC123, 0x8123, 0xA123 };
+
+	private static byte[] snapshot(GameBoy gb) {
+		ByteBuffer buffer = SaveState.save(gb, SaveState.allocate());
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static GameBoy start(int frames) {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		for(int i = 0; i < frames; i++) {
+			gb.runFrame();
+		}
+		return gb;
+	}
+
+	@Test
+	public void writesStayOnTheirSide() {
+		GameBoy parent = start(30);
+		// enable the MBC1 cartridge ram
+		parent.mmu.writeByte(0x0000, 0x0A);
+		for(int address : ADDRESSES) {
+			parent.mmu.writeByte(address, 0x11);
+			parent.mmu.writeByte(address + 1, 0x11);
+		}
+		GameBoy child = parent.fork();
+		for(int address : ADDRESSES) {
+			// the child writes a page it still shares, the parent the next byte of the same page
+			child.mmu.writeByte(address, 0x22);
+			parent.mmu.writeByte(address + 1, 0x33);
+		}
+		for(int address : ADDRESSES) {
+			assertEquals(0x11, parent.mmu.readByte(address));
+			assertEquals(0x22, child.mmu.readByte(address));
+			assertEquals(0x33, parent.mmu.readByte(address + 1));
+			assertEquals(0x11, child.mmu.readByte(address + 1));
+		}
+	}
+
+	@Test
+	public void forkRunsLikeItsParent() {
+		GameBoy parent = start(50);
+		GameBoy child = parent.fork();
+		assertArrayEquals(snapshot(parent), snapshot(child));
+		GameBoy straight = start(150);
+		for(int i = 0; i < 100; i++) {
+			parent.runFrame();
+			child.runFrame();
+		}
+		assertArrayEquals(snapshot(straight), snapshot(parent));
+		assertArrayEquals(snapshot(straight), snapshot(child));
+	}
+
+}
@@ -6,7 +6,7 @@ public class GameBoyTest {
 
 	@Test
 	public void test() {
-		GameBoy gb = GameBoy.getInstance();
+		GameBoy gb = new GameBoy();
 		gb.loadCartridge("src/gameboy/roms/ttt.gb");
 		gb.start();
 	}
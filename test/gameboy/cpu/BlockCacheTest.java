@@ -0,0 +1,64 @@
+package gameboy.cpu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gameboy.GameBoy;
+import gameboy.file.SaveState;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BlockCacheTest {
+
+	private static final String ROM = "src/gameboy/roms/wario_walking.gb";
+
+	private static byte[] snapshot(GameBoy gb) {
+		ByteBuffer buffer = SaveState.save(gb, SaveState.allocate());
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static GameBoy start(boolean blocks) {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		if(blocks && gb.z80.blocks == null) {
+			gb.z80.blocks = new BlockCache(gb, gb.z80);
+		} else if(!blocks) {
+			gb.z80.blocks = null;
+		}
+		return gb;
+	}
+
+	@Test
+	public void framesEndOnTheInterpretersInstruction() {
+		GameBoy interpreted = start(false);
+		GameBoy compiled = start(true);
+		for(int frame = 0; frame < 300; frame++) {
+			interpreted.runFrame();
+			compiled.runFrame();
+			assertEquals(interpreted.z80.instructions(), compiled.z80.instructions());
+		}
+		assertTrue(compiled.z80.blocks.size() > 0);
+		assertArrayEquals(snapshot(interpreted), snapshot(compiled));
+	}
+
+	@Test
+	public void cycleRunsEndOnTheInterpretersInstruction() {
+		GameBoy interpreted = start(false);
+		GameBoy compiled = start(true);
+		// ends that fall inside frames and inside blocks
+		for(int i = 0; i < 200; i++) {
+			interpreted.runCycles(12345);
+			compiled.runCycles(12345);
+			assertEquals(interpreted.z80.instructions(), compiled.z80.instructions());
+		}
+		assertTrue(compiled.z80.blocks.size() > 0);
+		assertEquals(interpreted.frames, compiled.frames);
+		assertArrayEquals(snapshot(interpreted), snapshot(compiled));
+	}
+
+}
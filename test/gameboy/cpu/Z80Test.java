@@ -0,0 +1,81 @@
+package gameboy.cpu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gameboy.GameBoy;
+
+import org.junit.Test;
+
+public class Z80Test {
+
+	private static final String ROM = "src/gameboy/roms/wario_walking.gb";
+
+	/**
+	 * a console about to run code at C000 in wram, with the stack at the top of wram
+	 */
+	private static GameBoy start(int... code) {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		gb.z80.blocks = null;
+		for(int i = 0; i < code.length; i++) {
+			gb.mmu.writeByte(0xC000 + i, code[i]);
+		}
+		gb.z80.r.PC = 0xC000;
+		gb.z80.r.SP = 0xDFF0;
+		return gb;
+	}
+
+	@Test
+	public void callPushesAndRetPopsTheWholeReturnAddress() {
+		// CALL C123, at C123 RET
+		GameBoy gb = start(0xCD, 0x23, 0xC1);
+		gb.mmu.writeByte(0xC123, 0xC9);
+		gb.z80.step();
+		assertEquals(0xC123, gb.z80.r.PC);
+		assertEquals(0xDFEE, gb.z80.r.SP);
+		assertEquals(0xC003, gb.mmu.readWord(0xDFEE));
+		assertEquals(0x03, gb.mmu.readByte(0xDFEE));
+		assertEquals(0xC0, gb.mmu.readByte(0xDFEF));
+		gb.z80.step();
+		assertEquals(0xC003, gb.z80.r.PC);
+		assertEquals(0xDFF0, gb.z80.r.SP);
+	}
+
+	@Test
+	public void haltSkipsToTheNextEventAndWakesOnVBlank() {
+		// HALT, with only the vblank interrupt enabled
+		GameBoy gb = start(0x76);
+		gb.mmu.IE = 0x01;
+		gb.mmu.IF = 0;
+		gb.z80.r.IME = 1;
+		gb.z80.step();
+		assertEquals(1, gb.z80.HALT);
+		int steps = 0;
+		while(gb.z80.HALT != 0) {
+			long expected = Math.min(gb.scheduler.next, gb.z80.clock.M + GameBoy.CYCLES_PER_FRAME);
+			gb.z80.step();
+			if(gb.z80.HALT != 0) {
+				assertEquals(expected, gb.z80.clock.M);
+				assertEquals(0, gb.mmu.IF & 0x01);
+			}
+			assertTrue(++steps < 1000);
+		}
+		// one step per gpu mode, at most a frame of them
+		assertTrue(steps > 1);
+		assertEquals(0x40, gb.z80.r.PC);
+		assertEquals(0, gb.mmu.IF & 0x01);
+		assertEquals(0xC001, gb.mmu.readWord(gb.z80.r.SP));
+	}
+
+	@Test
+	public void rstPushesTheWholeReturnAddress() {
+		// RST 38
+		GameBoy gb = start(0xFF);
+		gb.z80.step();
+		assertEquals(0x38, gb.z80.r.PC);
+		assertEquals(0xDFEE, gb.z80.r.SP);
+		assertEquals(0xC001, gb.mmu.readWord(0xDFEE));
+	}
+
+}
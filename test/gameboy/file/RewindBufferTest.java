@@ -0,0 +1,71 @@
+package gameboy.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gameboy.GameBoy;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RewindBufferTest {
+
+	private static final String ROM = "src/gameboy/roms/wario_walking.gb";
+
+	private static byte[] snapshot(GameBoy gb) {
+		ByteBuffer buffer = SaveState.save(gb, SaveState.allocate());
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	@Test
+	public void restoresEveryFrameHeldAfterWrapAndEviction() {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		int stateLength = snapshot(gb).length;
+		// four states of arena hold about two groups of a keyframe and three deltas, so the arena
+		// wraps, and the frame limit of 10, not a multiple of the keyframe interval, evicts keyframes
+		// whose deltas are still held and have to be dropped with them
+		int arenaBytes = stateLength * 4;
+		gb.rewind = new RewindBuffer(gb, 10, 4, arenaBytes);
+
+		Map<Long, byte[]> states = new HashMap<Long, byte[]>();
+		for(int i = 0; i < 60; i++) {
+			gb.runFrame();
+			states.put(gb.frames, snapshot(gb));
+			assertTrue(gb.rewind.bytesUsed() <= arenaBytes);
+		}
+		RewindBuffer rewind = gb.rewind;
+		assertTrue(rewind.oldestFrame() > 1);
+		assertEquals(60, rewind.newestFrame());
+		assertTrue(rewind.size() < 10);
+
+		// newest first, rewinding forgets the frames after the one restored
+		gb.rewind = null;
+		long oldest = rewind.oldestFrame();
+		for(long frame = rewind.newestFrame(); frame >= oldest; frame--) {
+			assertTrue(rewind.rewind(frame));
+			assertArrayEquals(states.get(frame), snapshot(gb));
+		}
+	}
+
+	@Test
+	public void refusesFramesNotHeld() {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		gb.rewind = new RewindBuffer(gb, 1);
+		for(int i = 0; i < 90; i++) {
+			gb.runFrame();
+		}
+		assertTrue(gb.rewind.oldestFrame() > 1);
+		assertFalse(gb.rewind.rewind(1));
+		assertFalse(gb.rewind.rewind(91));
+	}
+
+}
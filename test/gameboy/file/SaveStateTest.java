@@ -0,0 +1,54 @@
+package gameboy.file;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import gameboy.GameBoy;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SaveStateTest {
+
+	private static final String ROM = "src/gameboy/roms/ttt.gb";
+
+	private static byte[] snapshot(GameBoy gb) {
+		ByteBuffer buffer = SaveState.save(gb, SaveState.allocate());
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	@Test
+	public void restoredMachineRunsIdentically() {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		for(int i = 0; i < 100; i++) {
+			gb.runFrame();
+		}
+		byte[] saved = snapshot(gb);
+		for(int i = 0; i < 100; i++) {
+			gb.runFrame();
+		}
+
+		GameBoy restored = new GameBoy();
+		restored.loadCartridge(ROM);
+		SaveState.load(restored, ByteBuffer.wrap(saved));
+		for(int i = 0; i < 100; i++) {
+			restored.runFrame();
+		}
+		assertArrayEquals(snapshot(gb), snapshot(restored));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOtherCartridge() {
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(ROM);
+		byte[] saved = snapshot(gb);
+
+		GameBoy other = new GameBoy();
+		other.loadCartridge("src/gameboy/roms/pokemon_red.gb");
+		SaveState.load(other, ByteBuffer.wrap(saved));
+	}
+
+}
@@ -0,0 +1,25 @@
+package gameboy.fleet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class FleetTest {
+
+	@Test
+	public void badRomFailsOnlyItsSession() throws InterruptedException {
+		Session good = new Session("src/gameboy/roms/wario_walking.gb", 10);
+		Session bad = new Session("src/gameboy/roms/missing.gb", 10);
+		FleetReport report = new Fleet(2, 1).run(Arrays.asList(good, bad));
+		assertEquals(1, report.failed);
+		assertTrue(bad.error instanceof UncheckedIOException);
+		assertTrue(good.finished());
+		assertEquals(10, good.framesRun());
+		assertEquals(1, report.latencies.length);
+	}
+
+}
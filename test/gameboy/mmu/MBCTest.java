@@ -0,0 +1,191 @@
+package gameboy.mmu;
+
+import static org.junit.Assert.assertEquals;
+
+import gameboy.GameBoy;
+import gameboy.file.SaveState;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class MBCTest {
+
+	/**
+	 * rom and ram size header codes (0148, 0149), 1MB rom and 32KB ram unless a test needs an MBC1 board
+	 */
+	private static final int ROM_1MB = 5;
+	private static final int ROM_2MB = 6;
+	private static final int ROM_512KB = 4;
+	private static final int RAM_8KB = 2;
+	private static final int RAM_32KB = 3;
+
+	/**
+	 * a cartridge of the given type and sizes, the first byte of every rom bank holds its number
+	 */
+	private static GameBoy cartridge(int cartType, int romSize, int ramSize) throws IOException {
+		int banks = MBC.romBanks(romSize);
+		byte[] rom = new byte[banks * MBC.ROM_BANK_SIZE];
+		for(int bank = 0; bank < banks; bank++) {
+			rom[bank * MBC.ROM_BANK_SIZE] = (byte) bank;
+		}
+		rom[0x0147] = (byte) cartType;
+		rom[0x0148] = (byte) romSize;
+		rom[0x0149] = (byte) ramSize;
+		File file = File.createTempFile("mbc", ".gb");
+		file.deleteOnExit();
+		Files.write(file.toPath(), rom);
+		GameBoy gb = new GameBoy();
+		gb.loadCartridge(file.getPath());
+		return gb;
+	}
+
+	private static GameBoy cartridge(int cartType) throws IOException {
+		return cartridge(cartType, ROM_1MB, RAM_32KB);
+	}
+
+	private static int romBank(GameBoy gb) {
+		return gb.mmu.readByte(0x4000);
+	}
+
+	private static int rom0Bank(GameBoy gb) {
+		return gb.mmu.readByte(0x0000);
+	}
+
+	@Test
+	public void mbc1Bank0SelectsBank1() throws IOException {
+		GameBoy gb = cartridge(0x03, ROM_2MB, RAM_8KB);
+		gb.mmu.writeByte(0x2000, 0);
+		assertEquals(1, romBank(gb));
+		// the upper bits stay, only the low five are replaced, so 0x20 can't be selected
+		gb.mmu.writeByte(0x4000, 1);
+		gb.mmu.writeByte(0x2000, 0);
+		assertEquals(0x21, romBank(gb));
+	}
+
+	@Test
+	public void mbc1UpperBitsSelectHighBanks() throws IOException {
+		GameBoy gb = cartridge(0x03, ROM_2MB, RAM_8KB);
+		gb.mmu.writeByte(0x2000, 0x05);
+		assertEquals(0x05, romBank(gb));
+		gb.mmu.writeByte(0x4000, 1);
+		assertEquals(0x25, romBank(gb));
+		gb.mmu.writeByte(0x2000, 0x1F);
+		assertEquals(0x3F, romBank(gb));
+		gb.mmu.writeByte(0x4000, 3);
+		assertEquals(0x7F, romBank(gb));
+	}
+
+	@Test
+	public void mbc1RamEnable() throws IOException {
+		GameBoy gb = cartridge(0x03, ROM_512KB, RAM_32KB);
+		assertEquals(0xFF, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0xA000, 0x42);
+		gb.mmu.writeByte(0x0000, 0x0A);
+		assertEquals(0x00, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0xA000, 0x42);
+		assertEquals(0x42, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0x0000, 0x00);
+		assertEquals(0xFF, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0xA000, 0x17);
+		gb.mmu.writeByte(0x0000, 0x0A);
+		assertEquals(0x42, gb.mmu.readByte(0xA000));
+	}
+
+	@Test
+	public void mbc1Mode1MovesBank0On1MBRom() throws IOException {
+		GameBoy gb = cartridge(0x01, ROM_1MB, 0);
+		gb.mmu.writeByte(0x4000, 1);
+		gb.mmu.writeByte(0x2000, 3);
+		assertEquals(0x23, romBank(gb));
+		assertEquals(0x00, rom0Bank(gb));
+
+		// mode 1, BANK2 still applies to 4000-7FFF and now selects 0000-3FFF too
+		gb.mmu.writeByte(0x6000, 1);
+		assertEquals(0x23, romBank(gb));
+		assertEquals(0x20, rom0Bank(gb));
+
+		// 64 banks, only bit 0 of BANK2 reaches the rom
+		gb.mmu.writeByte(0x4000, 2);
+		assertEquals(0x03, romBank(gb));
+		assertEquals(0x00, rom0Bank(gb));
+		gb.mmu.writeByte(0x4000, 3);
+		assertEquals(0x23, romBank(gb));
+		assertEquals(0x20, rom0Bank(gb));
+
+		// back in mode 0 only 0000-3FFF returns to bank 0
+		gb.mmu.writeByte(0x6000, 0);
+		assertEquals(0x23, romBank(gb));
+		assertEquals(0x00, rom0Bank(gb));
+	}
+
+	@Test
+	public void mbc1Mode1SelectsRamBankOn32KBRam() throws IOException {
+		GameBoy gb = cartridge(0x03, ROM_512KB, RAM_32KB);
+		gb.mmu.writeByte(0x0000, 0x0A);
+		gb.mmu.writeByte(0x2000, 5);
+		gb.mmu.writeByte(0x4000, 2);
+		// mode 0, ram bank 0 whatever BANK2, and 32 banks leave no room for it in the rom bank
+		gb.mmu.writeByte(0xA000, 0x10);
+		assertEquals(0x05, romBank(gb));
+
+		// mode 1, BANK2 selects the ram bank, the rom banks are unchanged
+		gb.mmu.writeByte(0x6000, 1);
+		assertEquals(0x00, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0xA000, 0x22);
+		assertEquals(0x05, romBank(gb));
+		assertEquals(0x00, rom0Bank(gb));
+		gb.mmu.writeByte(0x4000, 0);
+		assertEquals(0x10, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0x4000, 2);
+		assertEquals(0x22, gb.mmu.readByte(0xA000));
+
+		// mode 0 goes back to ram bank 0
+		gb.mmu.writeByte(0x6000, 0);
+		assertEquals(0x10, gb.mmu.readByte(0xA000));
+	}
+
+	@Test
+	public void mbc1Mode1SurvivesSaveState() throws IOException {
+		GameBoy gb = cartridge(0x01, ROM_1MB, 0);
+		gb.mmu.writeByte(0x4000, 1);
+		gb.mmu.writeByte(0x6000, 1);
+		ByteBuffer state = SaveState.save(gb, SaveState.allocate());
+		GameBoy restored = cartridge(0x01, ROM_1MB, 0);
+		SaveState.load(restored, state);
+		assertEquals(0x20, rom0Bank(restored));
+		assertEquals(0x21, romBank(restored));
+	}
+
+	@Test
+	public void mbc3SevenBitBanks() throws IOException {
+		GameBoy gb = cartridge(0x13);
+		gb.mmu.writeByte(0x2000, 0);
+		assertEquals(1, romBank(gb));
+		gb.mmu.writeByte(0x2000, 0x3F);
+		assertEquals(0x3F, romBank(gb));
+		gb.mmu.writeByte(0x0000, 0x0A);
+		gb.mmu.writeByte(0x4000, 2);
+		gb.mmu.writeByte(0xA000, 0x22);
+		gb.mmu.writeByte(0x4000, 0);
+		assertEquals(0x00, gb.mmu.readByte(0xA000));
+		gb.mmu.writeByte(0x4000, 2);
+		assertEquals(0x22, gb.mmu.readByte(0xA000));
+	}
+
+	@Test
+	public void mbc5SelectsBank0() throws IOException {
+		GameBoy gb = cartridge(0x1B);
+		gb.mmu.writeByte(0x2000, 0);
+		assertEquals(0, romBank(gb));
+		gb.mmu.writeByte(0x2000, 0x2A);
+		assertEquals(0x2A, romBank(gb));
+		// bit 8 is past this rom's 64 banks
+		gb.mmu.writeByte(0x3000, 1);
+		assertEquals(0x2A, romBank(gb));
+	}
+
+}